@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.util.Locale;
+
+/**
+ * An immutable anomaly report: the value of a connection count series in a snapshot, relative to its baseline.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class Alert {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private long timestamp;
+    private String series;
+    private int value;
+    private double baseline;
+    private double standardDeviation;
+    private double zScore;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public Alert(long timestamp, String series, int value, double baseline, double standardDeviation, double zScore) {
+
+        this.timestamp = timestamp;
+        this.series = series;
+        this.value = value;
+        this.baseline = baseline;
+        this.standardDeviation = standardDeviation;
+        this.zScore = zScore;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public long getTimestamp() {
+
+        return timestamp;
+    }
+
+    /**
+     * The name of the series, for example "CLOSE_WAIT", "total" or "java.exe/CLOSE_WAIT".
+     */
+    public String getSeries() {
+
+        return series;
+    }
+
+    public int getValue() {
+
+        return value;
+    }
+
+    /**
+     * The exponentially weighted moving average of the series, before this value was taken into account.
+     */
+    public double getBaseline() {
+
+        return baseline;
+    }
+
+    public double getStandardDeviation() {
+
+        return standardDeviation;
+    }
+
+    public double getZScore() {
+
+        return zScore;
+    }
+
+    @Override
+    public String toString() {
+
+        return Netstat.TIMESTAMP_OUTPUT_FORMAT.format(timestamp) + ", " + series + ", " + value + ", " +
+                String.format(Locale.ROOT, "%.2f, %.2f, %.2f", baseline, standardDeviation, zScore);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
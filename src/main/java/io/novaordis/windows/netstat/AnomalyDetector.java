@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming connection count anomaly detection. For each snapshot, the detector counts the connections in total, in
+ * each watched state (CLOSE_WAIT and TIME_WAIT by default), and the same per process, and compares each count with
+ * the exponentially weighted moving average (EWMA) baseline of its series. A count that exceeds the baseline by at
+ * least the minimum increase and by at least the z-score threshold, measured in EWMA standard deviations, raises an
+ * alert, which is sent to the alert sink as soon as the snapshot is handled.
+ *
+ * Each series keeps only its mean and variance. A process that is absent from a snapshot is counted as zero, and once
+ * its total baseline decays under PROCESS_EVICTION_BASELINE it is no longer tracked; if it shows up again, its series
+ * start over, with a new warm-up. A process with a baseline of m connections is therefore dropped about
+ * ln(2m) / -ln(1 - alpha) snapshots after it disappears (36 snapshots for m=20 and alpha=0.1, 73 for m=1000). The
+ * memory footprint and the cost of handling a snapshot depend on the snapshot size and on the number of processes
+ * seen within that window, not on the length of the history.
+ *
+ * The detector can be configured with an expression such as:
+ *
+ * alpha=0.1,z=3,min-increase=10,min-stddev=1,warm-up=10,states=CLOSE_WAIT|TIME_WAIT
+ *
+ * alpha - the weight of the most recent value in the baseline, in (0, 1].
+ * z - the z-score threshold.
+ * min-increase - the minimum absolute increase over the baseline, filters out noise on small counts.
+ * min-stddev - the floor of the standard deviation, so a perfectly flat baseline does not alert on any increase.
+ * warm-up - the number of snapshots a series must see before it can alert.
+ * states - the watched states.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class AnomalyDetector implements SnapshotHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final double DEFAULT_ALPHA = 0.1;
+    public static final double DEFAULT_Z_SCORE_THRESHOLD = 3.0;
+    public static final double DEFAULT_MINIMUM_INCREASE = 10;
+    public static final double DEFAULT_MINIMUM_STANDARD_DEVIATION = 1.0;
+    public static final int DEFAULT_WARM_UP = 10;
+
+    public static final ConnectionState[] DEFAULT_WATCHED_STATES = {
+
+            ConnectionState.CLOSE_WAIT,
+            ConnectionState.TIME_WAIT,
+    };
+
+    public static final String TOTAL = "total";
+
+    /**
+     * An absent process whose total baseline decays under this value is no longer tracked.
+     */
+    public static final double PROCESS_EVICTION_BASELINE = 0.5;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Builds a detector from a configuration expression.
+     *
+     * @see AnomalyDetector
+     */
+    public static AnomalyDetector parse(String expression, AlertSink sink) throws Exception {
+
+        double alpha = DEFAULT_ALPHA;
+        double z = DEFAULT_Z_SCORE_THRESHOLD;
+        double minimumIncrease = DEFAULT_MINIMUM_INCREASE;
+        double minimumStandardDeviation = DEFAULT_MINIMUM_STANDARD_DEVIATION;
+        int warmUp = DEFAULT_WARM_UP;
+        ConnectionState[] states = DEFAULT_WATCHED_STATES;
+
+        if (expression != null) {
+
+            Set<String> names = new HashSet<>();
+
+            for(String clause: expression.split(",")) {
+
+                clause = clause.trim();
+
+                if (clause.isEmpty()) {
+
+                    continue;
+                }
+
+                int i = clause.indexOf('=');
+
+                if (i == -1) {
+
+                    throw new Exception("invalid detector clause, expecting <name>=<value>: " + clause);
+                }
+
+                String name = clause.substring(0, i).trim();
+                String value = clause.substring(i + 1).trim();
+
+                if (!names.add(name)) {
+
+                    throw new Exception("duplicate detector clause: " + name);
+                }
+
+                try {
+
+                    switch (name) {
+
+                        case "alpha":
+                            alpha = Double.parseDouble(value);
+                            break;
+                        case "z":
+                            z = Double.parseDouble(value);
+                            break;
+                        case "min-increase":
+                            minimumIncrease = Double.parseDouble(value);
+                            break;
+                        case "min-stddev":
+                            minimumStandardDeviation = Double.parseDouble(value);
+                            break;
+                        case "warm-up":
+                            warmUp = Integer.parseInt(value);
+                            break;
+                        case "states":
+                            String[] stateNames = value.split("\\|");
+                            states = new ConnectionState[stateNames.length];
+
+                            for(int j = 0; j < stateNames.length; j ++) {
+
+                                states[j] = ConnectionState.valueOf(stateNames[j].trim().toUpperCase());
+
+                                for(int k = 0; k < j; k ++) {
+
+                                    if (states[k] == states[j]) {
+
+                                        throw new Exception("duplicate detector state: " + states[j]);
+                                    }
+                                }
+                            }
+                            break;
+                        default:
+                            throw new Exception("unknown detector clause: " + name);
+                    }
+                }
+                catch(IllegalArgumentException e) {
+
+                    throw new Exception("invalid detector clause value: " + clause);
+                }
+            }
+        }
+
+        try {
+
+            return new AnomalyDetector(alpha, z, minimumIncrease, minimumStandardDeviation, warmUp, states, sink);
+        }
+        catch(IllegalArgumentException e) {
+
+            throw new Exception("invalid detector configuration: " + e.getMessage());
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private double alpha;
+    private double zScoreThreshold;
+    private double minimumIncrease;
+    private double minimumStandardDeviation;
+    private int warmUp;
+
+    private ConnectionState[] watchedStates;
+
+    // indexed by state ordinal, the index of the state in watchedStates or -1 if the state is not watched
+    private int[] watchedIndex;
+
+    private AlertSink sink;
+
+    private EwmaSeries total;
+    private EwmaSeries[] states;
+
+    // per-snapshot counts, indexed by state ordinal, reused across snapshots
+    private int[] stateCounts;
+
+    private Map<String, ProcessSeries> processes;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public AnomalyDetector(AlertSink sink) {
+
+        this(DEFAULT_ALPHA, DEFAULT_Z_SCORE_THRESHOLD, DEFAULT_MINIMUM_INCREASE, DEFAULT_MINIMUM_STANDARD_DEVIATION,
+                DEFAULT_WARM_UP, DEFAULT_WATCHED_STATES, sink);
+    }
+
+    public AnomalyDetector(double alpha, double zScoreThreshold, double minimumIncrease,
+                           double minimumStandardDeviation, int warmUp, ConnectionState[] watchedStates,
+                           AlertSink sink) {
+
+        //
+        // the comparisons are written so that NaN fails them
+        //
+
+        if (!(alpha > 0 && alpha <= 1)) {
+
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+
+        if (!(zScoreThreshold >= 0) || Double.isInfinite(zScoreThreshold)) {
+
+            throw new IllegalArgumentException(
+                    "the z-score threshold must be a non-negative number: " + zScoreThreshold);
+        }
+
+        if (!(minimumIncrease >= 0) || Double.isInfinite(minimumIncrease)) {
+
+            throw new IllegalArgumentException(
+                    "the minimum increase must be a non-negative number: " + minimumIncrease);
+        }
+
+        if (!(minimumStandardDeviation > 0) || Double.isInfinite(minimumStandardDeviation)) {
+
+            throw new IllegalArgumentException(
+                    "the minimum standard deviation must be a positive number: " + minimumStandardDeviation);
+        }
+
+        if (warmUp < 1) {
+
+            throw new IllegalArgumentException("the warm-up must be at least one snapshot");
+        }
+
+        this.alpha = alpha;
+        this.zScoreThreshold = zScoreThreshold;
+        this.minimumIncrease = minimumIncrease;
+        this.minimumStandardDeviation = minimumStandardDeviation;
+        this.warmUp = warmUp;
+        this.watchedStates = watchedStates.clone();
+        this.sink = sink;
+
+        this.watchedIndex = new int[ConnectionState.values().length];
+        Arrays.fill(watchedIndex, -1);
+
+        this.states = new EwmaSeries[this.watchedStates.length];
+
+        for(int i = 0; i < this.watchedStates.length; i ++) {
+
+            int ordinal = this.watchedStates[i].ordinal();
+
+            if (watchedIndex[ordinal] != -1) {
+
+                throw new IllegalArgumentException("duplicate watched state: " + this.watchedStates[i]);
+            }
+
+            watchedIndex[ordinal] = i;
+            states[i] = new EwmaSeries(this.watchedStates[i].name(), alpha);
+        }
+
+        this.total = new EwmaSeries(TOTAL, alpha);
+        this.stateCounts = new int[ConnectionState.values().length];
+        this.processes = new HashMap<>();
+    }
+
+    // SnapshotHandler implementation ----------------------------------------------------------------------------------
+
+    @Override
+    public void handle(long timestamp, List<Connection> connections) throws Exception {
+
+        Arrays.fill(stateCounts, 0);
+
+        for(ProcessSeries ps: processes.values()) {
+
+            ps.reset();
+        }
+
+        for(Connection c: connections) {
+
+            int ordinal = c.getState().ordinal();
+
+            stateCounts[ordinal] ++;
+
+            String process = c.getProcess();
+
+            if (process == null) {
+
+                continue;
+            }
+
+            ProcessSeries ps = processes.get(process);
+
+            if (ps == null) {
+
+                ps = new ProcessSeries(process);
+                processes.put(process, ps);
+            }
+
+            ps.count ++;
+
+            int w = watchedIndex[ordinal];
+
+            if (w != -1) {
+
+                ps.stateCounts[w] ++;
+            }
+        }
+
+        evaluate(timestamp, total, connections.size());
+
+        for(int i = 0; i < watchedStates.length; i ++) {
+
+            evaluate(timestamp, states[i], stateCounts[watchedStates[i].ordinal()]);
+        }
+
+        //
+        // processes that are not present in this snapshot contribute a zero count, until their baseline decays under
+        // the eviction threshold
+        //
+
+        for(Iterator<ProcessSeries> i = processes.values().iterator(); i.hasNext(); ) {
+
+            ProcessSeries ps = i.next();
+
+            evaluate(timestamp, ps.total, ps.count);
+
+            for(int j = 0; j < watchedStates.length; j ++) {
+
+                evaluate(timestamp, ps.states[j], ps.stateCounts[j]);
+            }
+
+            //
+            // the per-state counts never exceed the total count, neither do their baselines
+            //
+
+            if (ps.count == 0 && ps.total.getMean() < PROCESS_EVICTION_BASELINE) {
+
+                i.remove();
+            }
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public AlertSink getSink() {
+
+        return sink;
+    }
+
+    @Override
+    public String toString() {
+
+        return "AnomalyDetector[alpha=" + alpha + ", z=" + zScoreThreshold + ", min-increase=" + minimumIncrease +
+                ", min-stddev=" + minimumStandardDeviation + ", warm-up=" + warmUp + ", states=" +
+                Arrays.toString(watchedStates) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of processes whose series are currently tracked.
+     */
+    int getProcessCount() {
+
+        return processes.size();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Compares the value against the series baseline, raises an alert if needed, then updates the baseline.
+     */
+    private void evaluate(long timestamp, EwmaSeries series, int value) throws Exception {
+
+        if (series.getCount() >= warmUp) {
+
+            double baseline = series.getMean();
+            double increase = value - baseline;
+            double standardDeviation = Math.max(Math.sqrt(series.getVariance()), minimumStandardDeviation);
+            double z = increase / standardDeviation;
+
+            if (increase >= minimumIncrease && z >= zScoreThreshold) {
+
+                sink.alert(new Alert(timestamp, series.getName(), value, baseline, standardDeviation, z));
+            }
+        }
+
+        series.update(value);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class ProcessSeries {
+
+        private EwmaSeries total;
+        private EwmaSeries[] states;
+
+        // per-snapshot counts
+        private int count;
+        private int[] stateCounts;
+
+        ProcessSeries(String process) {
+
+            this.total = new EwmaSeries(process + "/" + TOTAL, alpha);
+            this.states = new EwmaSeries[watchedStates.length];
+            this.stateCounts = new int[watchedStates.length];
+
+            for(int i = 0; i < watchedStates.length; i ++) {
+
+                states[i] = new EwmaSeries(process + "/" + watchedStates[i].name(), alpha);
+            }
+        }
+
+        void reset() {
+
+            count = 0;
+            Arrays.fill(stateCounts, 0);
+        }
+    }
+
+}
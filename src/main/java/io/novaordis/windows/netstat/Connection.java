@@ -17,11 +17,9 @@
 package io.novaordis.windows.netstat;
 
 /**
- * Represents an immutable /proc/stat "reading" - the state of the file at a certain moment in time.
- *
- * https://kb.novaordis.com/index.php//proc/stat#Contents
- *
- * TODO: support for "page", "swap", "intr", "ctxt", etc. not yet implemented.
+ * A connection reported by netstat. The constructor validates the line and decodes the type, the state and the ports
+ * in a single scan, without allocating. The instance keeps the original line and the offsets of the host fields, and
+ * extracts the hosts and the process only when the corresponding getters are called.
  *
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 9/9/17
@@ -34,28 +32,44 @@ public class Connection {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
-    // TCP, UDP
-    private ConnectionType type;
+    private long lineNumber;
+    private String line;
 
+    private ConnectionType type;
     private ConnectionState state;
 
-    private boolean listening;
-    private boolean established;
-    private String process;
-    private String localHost;
     private int localPort;
-    private String remoteHost;
     private int remotePort;
 
+    // host field offsets; the separator is the index of the ':' that separates the host from the port
+    private int localBegin;
+    private int localSeparator;
+    private int remoteBegin;
+    private int remoteSeparator;
+
+    // decoded on demand
+    private String localHost;
+    private String remoteHost;
+
+    // the process line ("[java.exe]"), decoded on demand
+    private String processLine;
+    private String process;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Connection(long lineNumber, String line) throws Exception {
 
-        if (line.startsWith(ConnectionType.TCP.name())) {
+        this.lineNumber = lineNumber;
+        this.line = line;
+
+        int typeBegin = ConnectionLine.skipWhitespace(line, 0);
+        int typeEnd = ConnectionLine.fieldEnd(line, typeBegin);
+
+        if (isType(ConnectionType.TCP, typeBegin, typeEnd)) {
 
             type = ConnectionType.TCP;
         }
-        else if (line.startsWith(ConnectionType.UDP.name())) {
+        else if (isType(ConnectionType.UDP, typeBegin, typeEnd)) {
 
             type = ConnectionType.UDP;
         }
@@ -64,108 +78,51 @@ public class Connection {
             throw new Exception("line " + lineNumber + ": unknown connection type: " + line);
         }
 
-        line = line.substring(type.name().length()).trim();
-
-        //
-        // state
-        //
+        localBegin = ConnectionLine.skipWhitespace(line, typeEnd);
+        int localEnd = ConnectionLine.fieldEnd(line, localBegin);
+        remoteBegin = ConnectionLine.skipWhitespace(line, localEnd);
+        int remoteEnd = ConnectionLine.fieldEnd(line, remoteBegin);
+        int stateBegin = ConnectionLine.skipWhitespace(line, remoteEnd);
+        int stateEnd = ConnectionLine.fieldEnd(line, stateBegin);
 
-        int i = line.lastIndexOf(' ');
-
-        if (i == -1) {
+        if (localBegin == localEnd) {
 
             throw new Exception("line " + lineNumber + ": no space separator identified");
         }
 
-        String stateString = line.substring(i + 1);
-
-        try {
-
-            this.state = ConnectionState.valueOf(stateString);
-        }
-        catch(IllegalArgumentException e) {
-
-            throw new Exception("line " + lineNumber + ": " + "invalid state: " + stateString);
-        }
-
-        line = line.substring(0, i);
-
-        //
-        // process the rest of the line
-        //
-
-        // 1.2.3.4:80        1.2.3.5:61122
-
-        i = line.indexOf(' ');
-
-        if (i == -1) {
+        if (remoteBegin == remoteEnd) {
 
             throw new Exception("line " + lineNumber + ": missing space separator between local address and remote address");
         }
 
-        String local = line.substring(0, i).trim();
-        String remote = line.substring(i).trim();
+        if (stateBegin == stateEnd) {
 
-        i = local.lastIndexOf(':');
-
-        if (i == -1) {
-
-            throw new Exception("line " + lineNumber + ": missing ':' separator in the local address");
+            throw new Exception("line " + lineNumber + ": missing state");
         }
 
-        this.localHost = local.substring(0, i);
-
-        String lp = local.substring(i + 1);
+        this.state = ConnectionLine.state(line, stateBegin, stateEnd);
 
-        try {
+        if (state == null) {
 
-            this.localPort = Integer.parseInt(lp);
+            throw new Exception("line " + lineNumber + ": " + "invalid state: " + line.substring(stateBegin, stateEnd));
         }
-        catch(Exception e) {
 
-            //
-            // attempt standard ports
-            //
+        localSeparator = ConnectionLine.portSeparator(line, localBegin, localEnd);
 
-            Integer p = Netstat.STANDARD_PORTS.get(lp);
+        if (localSeparator == -1) {
 
-            if (p == null) {
-
-                throw new Exception("line " + lineNumber + ": unknown standard local port " + lp);
-            }
-
-            this.localPort = p;
+            throw new Exception("line " + lineNumber + ": missing ':' separator in the local address");
         }
 
-        i = remote.lastIndexOf(':');
+        remoteSeparator = ConnectionLine.portSeparator(line, remoteBegin, remoteEnd);
 
-        if (i == -1) {
+        if (remoteSeparator == -1) {
 
             throw new Exception("line " + lineNumber + ": missing ':' separator in the remote address");
         }
 
-        this.remoteHost = remote.substring(0, i);
-        String rp = remote.substring(i + 1);
-
-        try {
-
-            this.remotePort = Integer.parseInt(rp);
-        }
-        catch(Exception e) {
-
-            //
-            // attempt standard ports
-            //
-
-            Integer p = Netstat.STANDARD_PORTS.get(rp);
-
-            if (p == null) {
-
-                throw new Exception("line " + lineNumber + ": unknown standard remote port " + rp);
-            }
-
-            this.remotePort = p;
-        }
+        localPort = decodePort(localSeparator + 1, localEnd, "local");
+        remotePort = decodePort(remoteSeparator + 1, remoteEnd, "remote");
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
@@ -179,14 +136,18 @@ public class Connection {
             return;
         }
 
-        line = line.substring(1);
-
         if (!line.endsWith("]")) {
 
             throw new Exception("line: " + lineNumber + ": invalid process");
         }
 
-        process = line.substring(0, line.length() - 1);
+        processLine = line;
+        process = null;
+    }
+
+    public ConnectionType getType() {
+
+        return type;
     }
 
     public ConnectionState getState() {
@@ -199,11 +160,21 @@ public class Connection {
      */
     public String getProcess() {
 
+        if (process == null && processLine != null) {
+
+            process = processLine.substring(1, processLine.length() - 1);
+        }
+
         return process;
     }
 
     public String getLocalHost() {
 
+        if (localHost == null) {
+
+            localHost = line.substring(localBegin, localSeparator);
+        }
+
         return localHost;
     }
 
@@ -214,6 +185,11 @@ public class Connection {
 
     public String getRemoteHost() {
 
+        if (remoteHost == null) {
+
+            remoteHost = line.substring(remoteBegin, remoteSeparator);
+        }
+
         return remoteHost;
     }
 
@@ -228,6 +204,29 @@ public class Connection {
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private boolean isType(ConnectionType t, int begin, int end) {
+
+        String name = t.name();
+
+        return end - begin == name.length() && line.regionMatches(begin, name, 0, name.length());
+    }
+
+    /**
+     * Decodes a numeric or a standard port name port. Empty regions and numeric ports over 65535 are rejected.
+     */
+    private int decodePort(int begin, int end, String which) throws Exception {
+
+        int p = ConnectionLine.port(line, begin, end);
+
+        if (p == -1) {
+
+            throw new Exception(
+                    "line " + lineNumber + ": unknown standard " + which + " port " + line.substring(begin, end));
+        }
+
+        return p;
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
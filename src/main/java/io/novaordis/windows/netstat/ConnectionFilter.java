@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A connection filter compiled from an expression such as:
+ *
+ * state=CLOSE_WAIT|TIME_WAIT,process=java.exe,port=1400-1500
+ *
+ * Clauses are separated by commas and must all match. Alternative values within a clause are separated by '|'.
+ * Supported clauses:
+ *
+ * state=<state>
+ * process=<process> (case insensitive)
+ * port=<port>|<low>-<high>|<service name> (matches either the local or the remote port), local-port=..., remote-port=...
+ * address=<host> (matches either the local or the remote host, case insensitive), local-address=..., remote-address=...
+ *
+ * The filter is evaluated directly over the raw connection line, so lines that fail the filter are discarded before
+ * any Connection instance is created. The process is not available on the connection line, it comes on a subsequent
+ * line, so the process clause is evaluated separately, with acceptsProcess().
+ *
+ * Instances are not thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class ConnectionFilter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    public static ConnectionFilter parse(String expression) throws Exception {
+
+        if (expression == null || expression.trim().isEmpty()) {
+
+            throw new Exception("empty filter expression");
+        }
+
+        ConnectionFilter filter = new ConnectionFilter();
+        Set<String> names = new HashSet<>();
+
+        for(String clause: expression.split(",")) {
+
+            clause = clause.trim();
+
+            if (clause.isEmpty()) {
+
+                continue;
+            }
+
+            int i = clause.indexOf('=');
+
+            if (i == -1) {
+
+                throw new Exception("invalid filter clause, expecting <name>=<value>: " + clause);
+            }
+
+            String name = clause.substring(0, i).trim();
+
+            if (!names.add(name)) {
+
+                throw new Exception("duplicate filter clause: " + name);
+            }
+
+            String[] values = clause.substring(i + 1).split("\\|", -1);
+
+            for(int j = 0; j < values.length; j ++) {
+
+                values[j] = values[j].trim();
+
+                if (values[j].isEmpty()) {
+
+                    throw new Exception("invalid filter clause, empty value: " + clause);
+                }
+            }
+
+            switch (name) {
+
+                case "state":
+                    filter.states = toStates(values);
+                    break;
+                case "process":
+                    filter.processes = values;
+                    break;
+                case "port":
+                    filter.ports = toPortRanges(values);
+                    break;
+                case "local-port":
+                    filter.localPorts = toPortRanges(values);
+                    break;
+                case "remote-port":
+                    filter.remotePorts = toPortRanges(values);
+                    break;
+                case "address":
+                    filter.addresses = values;
+                    break;
+                case "local-address":
+                    filter.localAddresses = values;
+                    break;
+                case "remote-address":
+                    filter.remoteAddresses = values;
+                    break;
+                default:
+                    throw new Exception("unknown filter clause: " + name);
+            }
+        }
+
+        return filter;
+    }
+
+    private static boolean[] toStates(String[] values) throws Exception {
+
+        boolean[] states = new boolean[ConnectionState.values().length];
+
+        for(String v: values) {
+
+            try {
+
+                states[ConnectionState.valueOf(v.toUpperCase()).ordinal()] = true;
+            }
+            catch(IllegalArgumentException e) {
+
+                throw new Exception("invalid state: " + v);
+            }
+        }
+
+        return states;
+    }
+
+    /**
+     * @return an array of [low, high] inclusive port pairs.
+     */
+    private static int[] toPortRanges(String[] values) throws Exception {
+
+        int[] ranges = new int[2 * values.length];
+
+        for(int i = 0; i < values.length; i ++) {
+
+            String v = values[i];
+            int port = ServicePorts.getPort(v);
+
+            if (port != -1) {
+
+                ranges[2 * i] = ranges[2 * i + 1] = port;
+                continue;
+            }
+
+            int dash = v.indexOf('-');
+
+            try {
+
+                if (dash == -1) {
+
+                    ranges[2 * i] = ranges[2 * i + 1] = Integer.parseInt(v);
+                }
+                else {
+
+                    ranges[2 * i] = Integer.parseInt(v.substring(0, dash).trim());
+                    ranges[2 * i + 1] = Integer.parseInt(v.substring(dash + 1).trim());
+                }
+            }
+            catch(NumberFormatException e) {
+
+                throw new Exception("invalid port, port range or service name: " + v);
+            }
+
+            if (ranges[2 * i] < 0 || ranges[2 * i + 1] > 65535 || ranges[2 * i] > ranges[2 * i + 1]) {
+
+                throw new Exception("invalid port or port range: " + v);
+            }
+        }
+
+        return ranges;
+    }
+
+    private static boolean inRanges(int[] ranges, int port) {
+
+        for(int i = 0; i < ranges.length; i += 2) {
+
+            if (ranges[i] <= port && port <= ranges[i + 1]) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean matchesAny(String[] values, String s, int begin, int end) {
+
+        int length = end - begin;
+
+        for(String v: values) {
+
+            if (v.length() == length && s.regionMatches(true, begin, v, 0, length)) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "no restriction" for all criteria
+
+    private boolean[] states;
+    private String[] processes;
+    private int[] ports;
+    private int[] localPorts;
+    private int[] remotePorts;
+    private String[] addresses;
+    private String[] localAddresses;
+    private String[] remoteAddresses;
+
+    private final int[] offsets;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ConnectionFilter() {
+
+        this.offsets = new int[ConnectionLine.FIELD_OFFSETS_LENGTH];
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Evaluates all criteria except the process over a raw connection line, without extracting fields.
+     *
+     * Lines that cannot be scanned are accepted, so the Connection parsing logic gets a chance to report the error.
+     */
+    public boolean acceptsLine(String line) {
+
+        if (!ConnectionLine.scan(line, offsets)) {
+
+            return true;
+        }
+
+        if (states != null) {
+
+            ConnectionState s = ConnectionLine.state(line, offsets[ConnectionLine.STATE], offsets[ConnectionLine.STATE + 1]);
+
+            if (s == null) {
+
+                return true;
+            }
+
+            if (!states[s.ordinal()]) {
+
+                return false;
+            }
+        }
+
+        if (ports == null && localPorts == null && remotePorts == null &&
+                addresses == null && localAddresses == null && remoteAddresses == null) {
+
+            return true;
+        }
+
+        int localBegin = offsets[ConnectionLine.LOCAL];
+        int localEnd = offsets[ConnectionLine.LOCAL + 1];
+        int remoteBegin = offsets[ConnectionLine.REMOTE];
+        int remoteEnd = offsets[ConnectionLine.REMOTE + 1];
+
+        int localSeparator = ConnectionLine.portSeparator(line, localBegin, localEnd);
+        int remoteSeparator = ConnectionLine.portSeparator(line, remoteBegin, remoteEnd);
+
+        if (localSeparator == -1 || remoteSeparator == -1) {
+
+            return true;
+        }
+
+        if (ports != null || localPorts != null || remotePorts != null) {
+
+            int localPort = ConnectionLine.port(line, localSeparator + 1, localEnd);
+            int remotePort = ConnectionLine.port(line, remoteSeparator + 1, remoteEnd);
+
+            if (!acceptsPorts(localPort, remotePort)) {
+
+                return false;
+            }
+        }
+
+        if (addresses != null &&
+                !matchesAny(addresses, line, localBegin, localSeparator) &&
+                !matchesAny(addresses, line, remoteBegin, remoteSeparator)) {
+
+            return false;
+        }
+
+        if (localAddresses != null && !matchesAny(localAddresses, line, localBegin, localSeparator)) {
+
+            return false;
+        }
+
+        //noinspection RedundantIfStatement
+        if (remoteAddresses != null && !matchesAny(remoteAddresses, line, remoteBegin, remoteSeparator)) {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the filter has a process clause, so the decision on a connection line must be deferred until
+     * its process line is read.
+     */
+    public boolean requiresProcess() {
+
+        return processes != null;
+    }
+
+    /**
+     * @param process may be null, in which case only a filter without a process clause accepts it.
+     */
+    public boolean acceptsProcess(String process) {
+
+        return process == null ? processes == null : acceptsProcess(process, 0, process.length());
+    }
+
+    /**
+     * Evaluates the process clause over the [begin, end) region of the given string, without extracting it.
+     */
+    public boolean acceptsProcess(String s, int begin, int end) {
+
+        return processes == null || matchesAny(processes, s, begin, end);
+    }
+
+    @Override
+    public String toString() {
+
+        List<String> clauses = new ArrayList<>();
+
+        if (states != null) {
+
+            StringBuilder sb = new StringBuilder("state=");
+
+            for(ConnectionState s: ConnectionState.values()) {
+
+                if (states[s.ordinal()]) {
+
+                    sb.append(sb.length() > "state=".length() ? "|" : "").append(s.name());
+                }
+            }
+
+            clauses.add(sb.toString());
+        }
+
+        addClause(clauses, "process", processes);
+        addClause(clauses, "port", ports);
+        addClause(clauses, "local-port", localPorts);
+        addClause(clauses, "remote-port", remotePorts);
+        addClause(clauses, "address", addresses);
+        addClause(clauses, "local-address", localAddresses);
+        addClause(clauses, "remote-address", remoteAddresses);
+
+        return String.join(",", clauses);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean acceptsPorts(int localPort, int remotePort) {
+
+        if (ports != null && !inRanges(ports, localPort) && !inRanges(ports, remotePort)) {
+
+            return false;
+        }
+
+        if (localPorts != null && !inRanges(localPorts, localPort)) {
+
+            return false;
+        }
+
+        //noinspection RedundantIfStatement
+        if (remotePorts != null && !inRanges(remotePorts, remotePort)) {
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private static void addClause(List<String> clauses, String name, String[] values) {
+
+        if (values != null) {
+
+            clauses.add(name + "=" + String.join("|", values));
+        }
+    }
+
+    private static void addClause(List<String> clauses, String name, int[] ranges) {
+
+        if (ranges == null) {
+
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder(name).append('=');
+
+        for(int i = 0; i < ranges.length; i += 2) {
+
+            sb.append(i == 0 ? "" : "|").append(ranges[i]);
+
+            if (ranges[i] != ranges[i + 1]) {
+
+                sb.append('-').append(ranges[i + 1]);
+            }
+        }
+
+        clauses.add(sb.toString());
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+/**
+ * Allocation-free helpers that operate on raw netstat connection lines, identifying fields by offsets instead of
+ * extracting them as strings.
+ *
+ * A connection line looks like:
+ *
+ * TCP    10.0.0.1:8787          10.0.0.2:61122         CLOSE_WAIT
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+final class ConnectionLine {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    static final int TYPE = 0;
+    static final int LOCAL = 2;
+    static final int REMOTE = 4;
+    static final int STATE = 6;
+
+    /**
+     * The length of the offset array expected by scan(): begin and end offsets for type, local address, remote
+     * address and state.
+     */
+    static final int FIELD_OFFSETS_LENGTH = 8;
+
+    private static final ConnectionState[] STATES = ConnectionState.values();
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Scans the line once and records the begin (inclusive) and end (exclusive) offsets of the type, local address,
+     * remote address and state fields in the given array, at TYPE, LOCAL, REMOTE and STATE indices respectively.
+     *
+     * @return false if the line does not contain four whitespace-separated fields (for example UDP lines, which
+     * do not carry a state), in which case the content of the offset array is undefined.
+     */
+    static boolean scan(String line, int[] offsets) {
+
+        int i = 0;
+
+        for(int field = 0; field < FIELD_OFFSETS_LENGTH; field += 2) {
+
+            i = skipWhitespace(line, i);
+
+            if (i == line.length()) {
+
+                return false;
+            }
+
+            offsets[field] = i;
+            i = fieldEnd(line, i);
+            offsets[field + 1] = i;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the index of the first non-whitespace character at or after the given index, or the line length.
+     */
+    static int skipWhitespace(String line, int i) {
+
+        int length = line.length();
+
+        while(i < length && Character.isWhitespace(line.charAt(i))) {
+
+            i ++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return the index of the first whitespace character at or after the given index, or the line length.
+     */
+    static int fieldEnd(String line, int i) {
+
+        int length = line.length();
+
+        while(i < length && !Character.isWhitespace(line.charAt(i))) {
+
+            i ++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @return the index of the host:port separator within the [begin, end) address region, or -1 if there is no
+     * separator.
+     */
+    static int portSeparator(String line, int begin, int end) {
+
+        int i = line.lastIndexOf(':', end - 1);
+
+        return i < begin ? -1 : i;
+    }
+
+    /**
+     * Decodes the port from the [begin, end) region, which may be numeric or a standard port name.
+     *
+     * @return the port or -1 if the region is empty, or the name is not a known standard port name.
+     */
+    static int port(String line, int begin, int end) {
+
+        if (begin >= end) {
+
+            return -1;
+        }
+
+        int port = 0;
+
+        for(int i = begin; i < end; i ++) {
+
+            char c = line.charAt(i);
+
+            if (c < '0' || c > '9') {
+
+                return namedPort(line, begin, end);
+            }
+
+            port = port * 10 + (c - '0');
+
+            if (port > 65535) {
+
+                return -1;
+            }
+        }
+
+        return port;
+    }
+
+    /**
+     * Resolves a service name against the services database, without allocating.
+     *
+     * @return the port or -1 if the name is not known.
+     */
+    static int namedPort(String line, int begin, int end) {
+
+        return ServicePorts.getPort(line, begin, end);
+    }
+
+    /**
+     * @return the state whose name occupies exactly the [begin, end) region, or null if there is no such state.
+     */
+    static ConnectionState state(String line, int begin, int end) {
+
+        int length = end - begin;
+
+        for(ConnectionState s: STATES) {
+
+            String name = s.name();
+
+            if (name.length() == length && line.regionMatches(begin, name, 0, length)) {
+
+                return s;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the line is a process line ("[java.exe]"), which follows the connection line it belongs to.
+     */
+    static boolean isProcessLine(String line) {
+
+        return line.length() > 1 && line.charAt(0) == '[' && line.charAt(line.length() - 1) == ']';
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ConnectionLine() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
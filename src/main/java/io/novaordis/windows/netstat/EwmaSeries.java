@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+/**
+ * Exponentially weighted moving average and variance of a series, maintained incrementally in constant memory.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+class EwmaSeries {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String name;
+    private double alpha;
+
+    private double mean;
+    private double variance;
+    private long count;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param alpha the weight of the most recent value, in (0, 1].
+     */
+    EwmaSeries(String name, double alpha) {
+
+        this.name = name;
+        this.alpha = alpha;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    void update(double value) {
+
+        if (count == 0) {
+
+            mean = value;
+            variance = 0;
+        }
+        else {
+
+            double diff = value - mean;
+            double increment = alpha * diff;
+
+            mean += increment;
+            variance = (1 - alpha) * (variance + diff * increment);
+        }
+
+        count ++;
+    }
+
+    String getName() {
+
+        return name;
+    }
+
+    double getMean() {
+
+        return mean;
+    }
+
+    double getVariance() {
+
+        return variance;
+    }
+
+    /**
+     * @return the number of values seen so far.
+     */
+    long getCount() {
+
+        return count;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
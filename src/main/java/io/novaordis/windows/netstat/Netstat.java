@@ -18,7 +18,10 @@ package io.novaordis.windows.netstat;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.PrintStream;
+import java.io.Reader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -40,9 +43,21 @@ public class Netstat {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
+    /**
+     * @deprecated service names are resolved against the bundled services database, see ServicePorts, which contains
+     * all these entries. The map is no longer consulted by the parser.
+     */
+    @Deprecated
     public static final Map<String, Integer> STANDARD_PORTS = new HashMap<>();
     public static final Set<String> LOCAL_HOST_ADDRESSES = new HashSet<>();
 
+    public static final long FOLLOW_POLL_INTERVAL_MS = 1000L;
+
+    /**
+     * The format of the timestamps of the statistics rows and of the alerts.
+     */
+    public static final SimpleDateFormat TIMESTAMP_OUTPUT_FORMAT = new SimpleDateFormat("MM/dd/yy HH:mm");
+
     static {
 
         STANDARD_PORTS.put("ingreslock", 1524);
@@ -71,91 +86,133 @@ public class Netstat {
 
     private static boolean headerDisplayed = false;
 
-
+    /**
+     * Command line entry point:
+     *
+     * <netstat-output-file> [-f|--filter <filter-expression>] [--follow] [--detect[=<detector-configuration>]]
+     *     [--alerts=<alert-file>]
+     *
+     * --follow keeps reading the file as it grows, until the process is stopped.
+     *
+     * --detect runs the anomaly detector on each reading, sending alerts to stderr, or to the alert file, if
+     * specified. Specifying an alert file implies --detect.
+     *
+     * @see ConnectionFilter
+     * @see AnomalyDetector
+     */
     public static void parse(String[] args) throws Exception {
 
-        String filename = args[0];
+        String filename = null;
+        ConnectionFilter filter = null;
+        boolean follow = false;
+        boolean detect = false;
+        String detectorConfiguration = null;
+        String alertFilename = null;
 
-        File f = new File(filename);
+        for(int i = 0; i < args.length; i ++) {
 
-        BufferedReader br = new BufferedReader(new FileReader(f));
+            if ("-f".equals(args[i]) || "--filter".equals(args[i])) {
 
-        String line;
+                if (i == args.length - 1) {
 
-        int lineNumber = 0;
+                    throw new Exception("missing filter expression after " + args[i]);
+                }
 
-        TimestampInfo currentTimestampInfo = null;
+                filter = ConnectionFilter.parse(args[++i]);
+            }
+            else if (args[i].startsWith("--filter=")) {
 
-        Connection current = null;
+                filter = ConnectionFilter.parse(args[i].substring("--filter=".length()));
+            }
+            else if ("--follow".equals(args[i])) {
 
-        List<Connection> connections = new ArrayList<>();
+                follow = true;
+            }
+            else if ("--detect".equals(args[i])) {
 
-        while((line = br.readLine()) != null) {
+                detect = true;
+            }
+            else if (args[i].startsWith("--detect=")) {
 
-            lineNumber ++;
+                detect = true;
+                detectorConfiguration = args[i].substring("--detect=".length());
+            }
+            else if (args[i].startsWith("--alerts=")) {
 
-            line = line.trim();
+                detect = true;
+                alertFilename = args[i].substring("--alerts=".length());
+            }
+            else if (filename == null) {
 
-            if (line.isEmpty()) {
+                filename = args[i];
+            }
+            else {
 
-                continue;
+                throw new Exception("unknown argument: " + args[i]);
             }
+        }
 
-            if (TimestampInfo.isDateLine(line)) {
+        if (filename == null) {
 
-                //
-                // display the statistics for the previous reading
-                //
+            throw new Exception("a netstat output file must be specified");
+        }
 
-                if (currentTimestampInfo != null) {
+        List<SnapshotHandler> handlers = new ArrayList<>();
 
-                    displayStatistics(currentTimestampInfo, connections);
+        handlers.add(Netstat::displayStatistics);
 
-                    //
-                    // reset data and prepare it for the next reading
-                    //
+        PrintStream alerts = null;
 
-                    connections.clear();
-                }
+        if (detect) {
 
-                currentTimestampInfo = new TimestampInfo(line);
-            }
-            else if (TimestampInfo.isTimeLine(line)) {
+            alerts = alertFilename == null ? System.err : new PrintStream(new FileOutputStream(alertFilename, true));
+            handlers.add(AnomalyDetector.parse(detectorConfiguration, new PrintStreamAlertSink(alerts)));
+        }
 
-                //noinspection ConstantConditions
-                currentTimestampInfo.setTime(line);
-            }
-            else if (line.startsWith(ConnectionType.TCP.name())) {
+        File f = new File(filename);
+
+        BufferedReader br = new BufferedReader(new FileReader(f));
+
+        Netstat netstat = new Netstat(filter, handlers);
+
+        if (follow) {
+
+            //
+            // stopping the process interrupts the reading thread, which delivers the last reading before exiting
+            //
+
+            Thread reader = Thread.currentThread();
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
 
-                if (current != null) {
+                reader.interrupt();
 
-                    //
-                    // new connection report starts, save the current one
-                    //
+                try {
 
-                    connections.add(current);
+                    reader.join(FOLLOW_POLL_INTERVAL_MS);
                 }
+                catch(InterruptedException e) {
 
-                current = new Connection(lineNumber, line);
-            }
-            else if (current != null) {
+                    // exiting anyway
+                }
+            }));
 
-                current.add(lineNumber, line);
-            }
+            netstat.follow(br, FOLLOW_POLL_INTERVAL_MS);
+        }
+        else {
+
+            netstat.parse(br);
         }
 
         br.close();
 
-        if (currentTimestampInfo != null) {
+        if (alerts != null && alerts != System.err) {
 
-            //
-            // display statistics for the last reading
-            //
-            displayStatistics(currentTimestampInfo, connections);
+            alerts.close();
         }
     }
 
-    private static void displayStatistics(TimestampInfo ti, List<Connection> connections) {
+    private static void displayStatistics(long timestamp, List<Connection> connections) {
 
         ConnectionState[] states = {
 
@@ -191,7 +248,7 @@ public class Netstat {
             System.out.println();
         }
 
-        System.out.print(TimestampInfo.TIMESTAMP_OUTPUT_FORMAT.format(ti.getTimestamp()) + ", ");
+        System.out.print(TIMESTAMP_OUTPUT_FORMAT.format(timestamp) + ", ");
 
         for(ConnectionState s: states) {
 
@@ -246,16 +303,277 @@ public class Netstat {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    // may be null, in which case all connections are accepted
+    private ConnectionFilter filter;
+
+    private List<SnapshotHandler> handlers;
+
+    private TimestampInfo currentTimestampInfo;
+
+    private List<Connection> connections;
+
+    // the connection whose subsequent lines (service, process) are being read
+    private Connection current;
+
+    //
+    // a connection line that passed the line filter but whose creation is deferred until the process line that
+    // follows it is read and matched against the filter
+    //
+    private String deferredLine;
+    private long deferredLineNumber;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
+    /**
+     * @param filter may be null, in which case all connections are accepted.
+     *
+     * @param handlers the handlers to receive each reading, in order, as soon as the reading is complete.
+     */
+    public Netstat(ConnectionFilter filter, List<SnapshotHandler> handlers) {
+
+        this.filter = filter;
+        this.handlers = new ArrayList<>(handlers);
+        this.connections = new ArrayList<>();
+    }
+
     // Public ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * Parses the netstat output and sends each reading to the handlers. The reader is not closed.
+     */
+    public void parse(BufferedReader br) throws Exception {
+
+        String line;
+
+        long lineNumber = 0;
+
+        while((line = br.readLine()) != null) {
+
+            lineNumber ++;
+
+            processLine(lineNumber, line);
+        }
+
+        endConnection();
+
+        if (currentTimestampInfo != null) {
+
+            //
+            // handle the last reading
+            //
+            endReading();
+        }
+    }
+
+    /**
+     * Reads the netstat output as it is being written, the way "tail -f" does, and sends each reading to the handlers
+     * as soon as the header of the following reading is read. A reading is never considered complete because the
+     * output paused: netstat -b resolves process ownership slowly and may stop mid-reading for long intervals. Only
+     * complete (newline-terminated) lines are processed.
+     *
+     * The method returns only if the thread is interrupted, after processing the content already available and
+     * delivering the last reading, if any. The reader is not closed.
+     *
+     * @param pollInterval the interval, in milliseconds, to wait for more content once the end of the file is reached.
+     */
+    public void follow(Reader reader, long pollInterval) throws Exception {
+
+        char[] buffer = new char[8192];
+        StringBuilder line = new StringBuilder();
+
+        long lineNumber = 0;
+
+        while(!Thread.currentThread().isInterrupted()) {
+
+            int read = reader.read(buffer);
+
+            if (read <= 0) {
+
+                try {
+
+                    Thread.sleep(pollInterval);
+                }
+                catch(InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                continue;
+            }
+
+            lineNumber = processLines(buffer, read, line, lineNumber);
+        }
+
+        //
+        // process the content written before the interruption, then deliver the last reading
+        //
+
+        int read;
+
+        while(reader.ready() && (read = reader.read(buffer)) > 0) {
+
+            lineNumber = processLines(buffer, read, line, lineNumber);
+        }
+
+        endConnection();
+
+        if (currentTimestampInfo != null) {
+
+            endReading();
+        }
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private void processLine(long lineNumber, String line) throws Exception {
+
+        line = line.trim();
+
+        if (line.isEmpty()) {
+
+            return;
+        }
+
+        if (TimestampInfo.isDateLine(line)) {
+
+            endConnection();
+
+            //
+            // handle the previous reading
+            //
+
+            if (currentTimestampInfo != null) {
+
+                endReading();
+            }
+
+            currentTimestampInfo = new TimestampInfo(line);
+        }
+        else if (TimestampInfo.isTimeLine(line)) {
+
+            if (currentTimestampInfo == null) {
+
+                throw new Exception("line " + lineNumber + ": time line not preceded by a date line");
+            }
+
+            currentTimestampInfo.setTime(line);
+        }
+        else if (line.startsWith(ConnectionType.TCP.name())) {
+
+            //
+            // new connection report starts, save the current one
+            //
+
+            endConnection();
+
+            if (filter == null) {
+
+                current = new Connection(lineNumber, line);
+            }
+            else if (filter.acceptsLine(line)) {
+
+                if (filter.requiresProcess()) {
+
+                    deferredLine = line;
+                    deferredLineNumber = lineNumber;
+                }
+                else {
+
+                    current = new Connection(lineNumber, line);
+                }
+            }
+        }
+        else if (line.startsWith(ConnectionType.UDP.name())) {
+
+            //
+            // UDP connections are not tracked, but the UDP line ends the current connection report
+            //
+
+            endConnection();
+        }
+        else if (current != null) {
+
+            current.add(lineNumber, line);
+        }
+        else if (deferredLine != null && ConnectionLine.isProcessLine(line)) {
+
+            if (filter.acceptsProcess(line, 1, line.length() - 1)) {
+
+                current = new Connection(deferredLineNumber, deferredLine);
+                current.add(lineNumber, line);
+            }
+
+            deferredLine = null;
+        }
+    }
+
+    /**
+     * Splits the characters into lines and processes the complete ones. The incomplete last line, if any, is left in
+     * the line buffer.
+     *
+     * @return the number of the last processed line.
+     */
+    private long processLines(char[] buffer, int length, StringBuilder line, long lineNumber) throws Exception {
+
+        for(int i = 0; i < length; i ++) {
+
+            char c = buffer[i];
+
+            if (c != '\n') {
+
+                line.append(c);
+                continue;
+            }
+
+            lineNumber ++;
+
+            //
+            // trailing '\r', if any, is handled by trim()
+            //
+
+            processLine(lineNumber, line.toString());
+
+            line.setLength(0);
+        }
+
+        return lineNumber;
+    }
+
+    private void endReading() throws Exception {
+
+        long timestamp = currentTimestampInfo.getTimestamp();
+
+        for(SnapshotHandler h: handlers) {
+
+            h.handle(timestamp, connections);
+        }
+
+        //
+        // reset data and prepare it for the next reading
+        //
+
+        connections.clear();
+    }
+
+    private void endConnection() {
+
+        if (current != null) {
+
+            connections.add(current);
+            current = null;
+        }
+
+        //
+        // a deferred connection line that did not get a process line is discarded, the filter has a process clause
+        //
+
+        deferredLine = null;
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
     private static class TimestampInfo {
@@ -264,7 +582,6 @@ public class Netstat {
         public static final Pattern TIME_PATTERN = Pattern.compile("^[0-2]\\d:\\d\\d.*");
 
         public static final SimpleDateFormat TIMESTAMP_INPUT_FORMAT = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-        public static final SimpleDateFormat TIMESTAMP_OUTPUT_FORMAT = new SimpleDateFormat("MM/dd/YY HH:mm");
 
         /**
          * Return true if the line starts with date info.
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.io.PrintStream;
+
+/**
+ * Writes alerts, one per line, as "<time>, <series>, <value>, <baseline>, <standard deviation>, <z-score>". The
+ * stream is flushed after each alert, so alerts are visible as soon as they are raised.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class PrintStreamAlertSink implements AlertSink {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private PrintStream out;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public PrintStreamAlertSink(PrintStream out) {
+
+        this.out = out;
+    }
+
+    // AlertSink implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public void alert(Alert alert) {
+
+        out.println(alert);
+        out.flush();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Service name to port and port to service name lookups, backed by the "services" database bundled with the
+ * package, which mirrors the one Windows netstat resolves port numbers against when executed without -n.
+ *
+ * The database is compiled once, when the class is loaded, into open addressing tables of primitive ports and
+ * names. A name lookup hashes the characters of the name directly from the line it appears in and compares them
+ * in place, so it does not allocate.
+ *
+ * Both the TCP and UDP entries and their aliases are indexed. If a name is declared with different ports for TCP
+ * and UDP, the TCP port wins. The reverse lookup returns the first name declared for the port, TCP first, which is
+ * the name netstat displays.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public final class ServicePorts {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String SERVICES_RESOURCE = "services";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static final ServicePorts DATABASE;
+
+    static {
+
+        InputStream is = ServicePorts.class.getResourceAsStream(SERVICES_RESOURCE);
+
+        if (is == null) {
+
+            throw new IllegalStateException(SERVICES_RESOURCE + " not found in classpath");
+        }
+
+        try(Reader r = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+
+            DATABASE = new ServicePorts(r);
+        }
+        catch(Exception e) {
+
+            throw new IllegalStateException("failed to load the " + SERVICES_RESOURCE + " database", e);
+        }
+    }
+
+    /**
+     * @return the port corresponding to the service name or -1 if the name is not known.
+     */
+    public static int getPort(String name) {
+
+        return getPort(name, 0, name.length());
+    }
+
+    /**
+     * Looks up the service name that occupies the [begin, end) region of the given string, without extracting it.
+     *
+     * @return the port corresponding to the service name or -1 if the name is not known.
+     */
+    public static int getPort(String s, int begin, int end) {
+
+        return DATABASE.port(s, begin, end);
+    }
+
+    /**
+     * @return the service name netstat displays for the given port, or null if the port has no name.
+     */
+    public static String getName(int port) {
+
+        return DATABASE.name(port);
+    }
+
+    /**
+     * @return the number of distinct service names (including aliases).
+     */
+    public static int size() {
+
+        return DATABASE.size;
+    }
+
+    /**
+     * @return a power of two that keeps the load factor under 0.5.
+     */
+    private static int tableCapacity(int entries) {
+
+        int capacity = 16;
+
+        while(capacity < 2 * entries) {
+
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * Reads a services database, TCP entries first, primary names before aliases.
+     */
+    private static void load(Reader reader, List<String> names, List<Integer> ports) throws Exception {
+
+        List<String> udpNames = new ArrayList<>();
+        List<Integer> udpPorts = new ArrayList<>();
+
+        BufferedReader br = new BufferedReader(reader);
+
+        String line;
+
+        while((line = br.readLine()) != null) {
+
+            int i = line.indexOf('#');
+
+            if (i != -1) {
+
+                line = line.substring(0, i);
+            }
+
+            line = line.trim();
+
+            if (line.isEmpty()) {
+
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+
+            if (tokens.length < 2) {
+
+                throw new Exception("invalid " + SERVICES_RESOURCE + " entry: " + line);
+            }
+
+            i = tokens[1].indexOf('/');
+
+            if (i == -1) {
+
+                throw new Exception("invalid " + SERVICES_RESOURCE + " entry, missing protocol: " + line);
+            }
+
+            int port = Integer.parseInt(tokens[1].substring(0, i));
+            String protocol = tokens[1].substring(i + 1);
+
+            List<String> n = "tcp".equalsIgnoreCase(protocol) ? names : udpNames;
+            List<Integer> p = "tcp".equalsIgnoreCase(protocol) ? ports : udpPorts;
+
+            n.add(tokens[0]);
+            p.add(port);
+
+            for(int j = 2; j < tokens.length; j ++) {
+
+                n.add(tokens[j]);
+                p.add(port);
+            }
+        }
+
+        names.addAll(udpNames);
+        ports.addAll(udpPorts);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // name -> port table
+    private final String[] names;
+    private final int[] namePorts;
+    private final int nameMask;
+
+    // port -> name table; free slots have a -1 port
+    private final int[] ports;
+    private final String[] portNames;
+    private final int portMask;
+
+    private final int size;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the services database read from the given reader. The reader is not closed.
+     */
+    ServicePorts(Reader reader) throws Exception {
+
+        List<String> entryNames = new ArrayList<>();
+        List<Integer> entryPorts = new ArrayList<>();
+
+        load(reader, entryNames, entryPorts);
+
+        int capacity = tableCapacity(entryNames.size());
+
+        this.names = new String[capacity];
+        this.namePorts = new int[capacity];
+        this.nameMask = capacity - 1;
+
+        this.ports = new int[capacity];
+        this.portNames = new String[capacity];
+        this.portMask = capacity - 1;
+
+        Arrays.fill(ports, -1);
+
+        int size = 0;
+
+        for(int i = 0; i < entryNames.size(); i ++) {
+
+            String name = entryNames.get(i);
+            int port = entryPorts.get(i);
+
+            //
+            // the first declaration wins in both directions
+            //
+
+            int slot = nameSlot(name, 0, name.length());
+
+            if (names[slot] == null) {
+
+                names[slot] = name;
+                namePorts[slot] = port;
+                size ++;
+            }
+
+            slot = portSlot(port);
+
+            if (ports[slot] == -1) {
+
+                ports[slot] = port;
+                portNames[slot] = name;
+            }
+        }
+
+        this.size = size;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the port corresponding to the service name occupying the [begin, end) region, or -1.
+     */
+    int port(String s, int begin, int end) {
+
+        int slot = nameSlot(s, begin, end);
+
+        return names[slot] == null ? -1 : namePorts[slot];
+    }
+
+    /**
+     * @return the first name declared for the port, or null.
+     */
+    String name(int port) {
+
+        if (port < 0) {
+
+            return null;
+        }
+
+        return portNames[portSlot(port)];
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the slot that contains the name occupying the [begin, end) region, or the free slot where the name
+     * would be stored.
+     */
+    private int nameSlot(String s, int begin, int end) {
+
+        int length = end - begin;
+        int h = 0;
+
+        for(int i = begin; i < end; i ++) {
+
+            h = 31 * h + s.charAt(i);
+        }
+
+        int slot = (h ^ (h >>> 16)) & nameMask;
+
+        String candidate;
+
+        while((candidate = names[slot]) != null) {
+
+            if (candidate.length() == length && s.regionMatches(begin, candidate, 0, length)) {
+
+                break;
+            }
+
+            slot = (slot + 1) & nameMask;
+        }
+
+        return slot;
+    }
+
+    private int portSlot(int port) {
+
+        int slot = (port * 0x9E3779B1 >>> 16) & portMask;
+
+        int candidate;
+
+        while((candidate = ports[slot]) != -1 && candidate != port) {
+
+            slot = (slot + 1) & portMask;
+        }
+
+        return slot;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scans the connections of a range of snapshots held by a SnapshotStore, in timestamp order. The getters read the
+ * current connection record directly from off-heap memory, so scanning does not create any objects. Typical usage:
+ *
+ * SnapshotCursor c = store.cursor(from, to);
+ *
+ * while(c.next()) {
+ *
+ *     if (ConnectionState.CLOSE_WAIT.equals(c.getState())) {
+ *         ...
+ *     }
+ * }
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class SnapshotCursor {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final ConnectionType[] TYPES = ConnectionType.values();
+    private static final ConnectionState[] STATES = ConnectionState.values();
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private SnapshotStore store;
+
+    // the index of the snapshot that follows the last snapshot to scan
+    private int endSnapshot;
+
+    private int snapshot;
+    private long timestamp;
+
+    // global record indices, the current record and the record that follows the last record of the current snapshot
+    private long record;
+    private long snapshotEndRecord;
+
+    private ByteBuffer segment;
+    private int position;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    SnapshotCursor(SnapshotStore store, int firstSnapshot, int endSnapshot) {
+
+        this.store = store;
+        this.endSnapshot = endSnapshot;
+        this.snapshot = firstSnapshot - 1;
+        this.record = -1;
+        this.snapshotEndRecord = 0;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Advances to the next connection, moving to the next non-empty snapshot if the current snapshot is exhausted.
+     *
+     * @return false if there are no more connections.
+     */
+    public boolean next() {
+
+        while(record + 1 >= snapshotEndRecord) {
+
+            if (!advanceSnapshot()) {
+
+                return false;
+            }
+        }
+
+        record ++;
+        segment = store.recordSegment(record);
+        position = store.recordPosition(record);
+
+        return true;
+    }
+
+    /**
+     * Skips the remaining connections of the current snapshot and positions the cursor before the first connection
+     * of the next snapshot, which may be empty. Useful for per-snapshot aggregations.
+     *
+     * @return false if there are no more snapshots.
+     */
+    public boolean nextSnapshot() {
+
+        return advanceSnapshot();
+    }
+
+    /**
+     * @return true if there are more connections in the current snapshot.
+     */
+    public boolean hasNextInSnapshot() {
+
+        return record + 1 < snapshotEndRecord;
+    }
+
+    /**
+     * @return the index, within the store, of the current snapshot.
+     */
+    public int getSnapshotIndex() {
+
+        return snapshot;
+    }
+
+    /**
+     * @return the timestamp of the current snapshot.
+     */
+    public long getTimestamp() {
+
+        return timestamp;
+    }
+
+    public ConnectionType getType() {
+
+        return TYPES[segment.get(position + SnapshotStore.TYPE_OFFSET)];
+    }
+
+    public ConnectionState getState() {
+
+        return STATES[segment.get(position + SnapshotStore.STATE_OFFSET)];
+    }
+
+    /**
+     * May return null.
+     */
+    public String getProcess() {
+
+        return store.getProcess(segment.getInt(position + SnapshotStore.PROCESS_OFFSET));
+    }
+
+    public String getLocalHost() {
+
+        return store.getHost(segment.getInt(position + SnapshotStore.LOCAL_HOST_OFFSET));
+    }
+
+    public int getLocalPort() {
+
+        return segment.getChar(position + SnapshotStore.LOCAL_PORT_OFFSET);
+    }
+
+    public String getRemoteHost() {
+
+        return store.getHost(segment.getInt(position + SnapshotStore.REMOTE_HOST_OFFSET));
+    }
+
+    public int getRemotePort() {
+
+        return segment.getChar(position + SnapshotStore.REMOTE_PORT_OFFSET);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean advanceSnapshot() {
+
+        if (snapshot + 1 >= endSnapshot) {
+
+            //
+            // exhausted, prevent next() from returning the remaining records of the current snapshot
+            //
+
+            snapshotEndRecord = record + 1;
+            return false;
+        }
+
+        snapshot ++;
+        timestamp = store.getTimestamp(snapshot);
+        record = store.getFirstRecord(snapshot) - 1;
+        snapshotEndRecord = record + 1 + store.getConnectionCount(snapshot);
+
+        return true;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
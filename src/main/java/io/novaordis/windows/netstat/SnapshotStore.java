@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the connections of a large number of netstat readings (snapshots) outside the Java heap. Each connection is
+ * stored as a fixed-width record in a direct ByteBuffer segment, and each snapshot as a fixed-width index entry
+ * (timestamp, first record, record count), also in direct segments. Host and process names are stored as identifiers
+ * into dictionaries, so the heap usage depends on the number of distinct hosts and processes, not on the number of
+ * snapshots or connections held.
+ *
+ * Snapshots must be added in non-decreasing timestamp order. The stored data is scanned with a SnapshotCursor.
+ *
+ * The store is a library component, there is no command line entry point for it. Captures are loaded by passing the
+ * store to a Netstat instance as one of its snapshot handlers.
+ *
+ * Instances are not thread safe. A store can be scanned by multiple cursors concurrently as long as nothing is
+ * added to it.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class SnapshotStore implements SnapshotHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    //
+    // connection record layout
+    //
+
+    static final int TYPE_OFFSET = 0; // byte
+    static final int STATE_OFFSET = 1; // byte
+    static final int LOCAL_PORT_OFFSET = 2; // char
+    static final int REMOTE_PORT_OFFSET = 4; // char
+    static final int LOCAL_HOST_OFFSET = 8; // int, host dictionary id
+    static final int REMOTE_HOST_OFFSET = 12; // int, host dictionary id
+    static final int PROCESS_OFFSET = 16; // int, process dictionary id, or NO_PROCESS
+    static final int RECORD_SIZE = 20;
+
+    static final int NO_PROCESS = -1;
+
+    //
+    // snapshot index entry layout
+    //
+
+    static final int TIMESTAMP_OFFSET = 0; // long
+    static final int FIRST_RECORD_OFFSET = 8; // long
+    static final int RECORD_COUNT_OFFSET = 16; // int
+    static final int INDEX_ENTRY_SIZE = 20;
+
+    static final int INDEX_ENTRIES_PER_SEGMENT = 16 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final int recordsPerSegment;
+
+    private List<ByteBuffer> recordSegments;
+    private List<ByteBuffer> indexSegments;
+
+    private StringDictionary hosts;
+    private StringDictionary processes;
+
+    private long recordCount;
+    private int snapshotCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public SnapshotStore() {
+
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize the size in bytes of a record segment. Segments are allocated on demand, one at a time.
+     */
+    public SnapshotStore(int segmentSize) {
+
+        if (segmentSize < RECORD_SIZE) {
+
+            throw new IllegalArgumentException("segment size " + segmentSize + " smaller than the record size");
+        }
+
+        this.recordsPerSegment = segmentSize / RECORD_SIZE;
+        this.recordSegments = new ArrayList<>();
+        this.indexSegments = new ArrayList<>();
+        this.hosts = new StringDictionary();
+        this.processes = new StringDictionary();
+    }
+
+    // SnapshotHandler implementation ----------------------------------------------------------------------------------
+
+    @Override
+    public void handle(long timestamp, List<Connection> connections) {
+
+        add(timestamp, connections);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Copies the connections off-heap. The connection list can be discarded or reused after the method returns.
+     *
+     * The snapshot is added atomically: if reading any connection fails, the records already written for the snapshot
+     * are discarded, the store is left as it was before the call, and the exception is rethrown.
+     *
+     * @exception IllegalArgumentException if the timestamp precedes the timestamp of the last added snapshot.
+     */
+    public void add(long timestamp, List<Connection> connections) {
+
+        if (snapshotCount > 0 && timestamp < getTimestamp(snapshotCount - 1)) {
+
+            throw new IllegalArgumentException(
+                    "snapshot timestamp " + timestamp + " precedes the last stored timestamp " +
+                            getTimestamp(snapshotCount - 1));
+        }
+
+        long firstRecord = recordCount;
+
+        try {
+
+            for(Connection c: connections) {
+
+                writeRecord(c);
+            }
+        }
+        catch(RuntimeException e) {
+
+            //
+            // the records written so far are not indexed, and will be overwritten by the next snapshot
+            //
+
+            recordCount = firstRecord;
+            throw e;
+        }
+
+        if (snapshotCount == indexSegments.size() * INDEX_ENTRIES_PER_SEGMENT) {
+
+            indexSegments.add(ByteBuffer.allocateDirect(INDEX_ENTRIES_PER_SEGMENT * INDEX_ENTRY_SIZE));
+        }
+
+        ByteBuffer index = indexSegment(snapshotCount);
+        int p = indexPosition(snapshotCount);
+
+        index.putLong(p + TIMESTAMP_OFFSET, timestamp);
+        index.putLong(p + FIRST_RECORD_OFFSET, firstRecord);
+        index.putInt(p + RECORD_COUNT_OFFSET, connections.size());
+
+        snapshotCount ++;
+    }
+
+    public int getSnapshotCount() {
+
+        return snapshotCount;
+    }
+
+    /**
+     * @return the total number of connections, across all snapshots.
+     */
+    public long getConnectionCount() {
+
+        return recordCount;
+    }
+
+    public long getTimestamp(int snapshot) {
+
+        checkSnapshot(snapshot);
+
+        return indexSegment(snapshot).getLong(indexPosition(snapshot) + TIMESTAMP_OFFSET);
+    }
+
+    public int getConnectionCount(int snapshot) {
+
+        checkSnapshot(snapshot);
+
+        return indexSegment(snapshot).getInt(indexPosition(snapshot) + RECORD_COUNT_OFFSET);
+    }
+
+    /**
+     * @return the index of the first snapshot whose timestamp is equal to or greater than the given timestamp, or
+     * getSnapshotCount() if there is no such snapshot.
+     */
+    public int getSnapshotIndex(long timestamp) {
+
+        int low = 0;
+        int high = snapshotCount;
+
+        while(low < high) {
+
+            int middle = (low + high) >>> 1;
+
+            if (getTimestamp(middle) < timestamp) {
+
+                low = middle + 1;
+            }
+            else {
+
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return the number of bytes allocated outside the heap.
+     */
+    public long getOffHeapSize() {
+
+        return (long)recordSegments.size() * recordsPerSegment * RECORD_SIZE +
+                (long)indexSegments.size() * INDEX_ENTRIES_PER_SEGMENT * INDEX_ENTRY_SIZE;
+    }
+
+    /**
+     * @return a cursor over all connections of all snapshots.
+     */
+    public SnapshotCursor cursor() {
+
+        return new SnapshotCursor(this, 0, snapshotCount);
+    }
+
+    /**
+     * @return a cursor over the connections of the snapshots taken in the [from, to) interval.
+     */
+    public SnapshotCursor cursor(long from, long to) {
+
+        int first = getSnapshotIndex(from);
+        int end = Math.max(first, getSnapshotIndex(to));
+
+        return new SnapshotCursor(this, first, end);
+    }
+
+    /**
+     * Drops all snapshots. The off-heap memory is released when the segments are garbage collected.
+     */
+    public void clear() {
+
+        recordSegments.clear();
+        indexSegments.clear();
+        hosts.clear();
+        processes.clear();
+        recordCount = 0;
+        snapshotCount = 0;
+    }
+
+    @Override
+    public String toString() {
+
+        return "SnapshotStore[" + snapshotCount + " snapshots, " + recordCount + " connections, " +
+                getOffHeapSize() + " bytes off-heap]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    long getFirstRecord(int snapshot) {
+
+        return indexSegment(snapshot).getLong(indexPosition(snapshot) + FIRST_RECORD_OFFSET);
+    }
+
+    ByteBuffer recordSegment(long record) {
+
+        return recordSegments.get((int)(record / recordsPerSegment));
+    }
+
+    int recordPosition(long record) {
+
+        return (int)(record % recordsPerSegment) * RECORD_SIZE;
+    }
+
+    String getHost(int id) {
+
+        return hosts.get(id);
+    }
+
+    String getProcess(int id) {
+
+        return id == NO_PROCESS ? null : processes.get(id);
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void writeRecord(Connection c) {
+
+        if (recordCount == (long)recordSegments.size() * recordsPerSegment) {
+
+            recordSegments.add(ByteBuffer.allocateDirect(recordsPerSegment * RECORD_SIZE));
+        }
+
+        ByteBuffer segment = recordSegment(recordCount);
+        int p = recordPosition(recordCount);
+
+        String process = c.getProcess();
+
+        segment.put(p + TYPE_OFFSET, (byte)c.getType().ordinal());
+        segment.put(p + STATE_OFFSET, (byte)c.getState().ordinal());
+        segment.putChar(p + LOCAL_PORT_OFFSET, (char)c.getLocalPort());
+        segment.putChar(p + REMOTE_PORT_OFFSET, (char)c.getRemotePort());
+        segment.putInt(p + LOCAL_HOST_OFFSET, hosts.id(c.getLocalHost()));
+        segment.putInt(p + REMOTE_HOST_OFFSET, hosts.id(c.getRemoteHost()));
+        segment.putInt(p + PROCESS_OFFSET, process == null ? NO_PROCESS : processes.id(process));
+
+        recordCount ++;
+    }
+
+    private ByteBuffer indexSegment(int snapshot) {
+
+        return indexSegments.get(snapshot / INDEX_ENTRIES_PER_SEGMENT);
+    }
+
+    private int indexPosition(int snapshot) {
+
+        return (snapshot % INDEX_ENTRIES_PER_SEGMENT) * INDEX_ENTRY_SIZE;
+    }
+
+    private void checkSnapshot(int snapshot) {
+
+        if (snapshot < 0 || snapshot >= snapshotCount) {
+
+            throw new IndexOutOfBoundsException("snapshot " + snapshot + " out of [0, " + snapshotCount + ")");
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps strings to dense int identifiers and back. The size is proportional to the number of distinct strings, not to
+ * the number of times they are added.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+class StringDictionary {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private Map<String, Integer> ids;
+    private List<String> values;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    StringDictionary() {
+
+        this.ids = new HashMap<>();
+        this.values = new ArrayList<>();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the identifier of the given string, allocating a new one if the string was not seen before.
+     */
+    int id(String s) {
+
+        Integer id = ids.get(s);
+
+        if (id == null) {
+
+            id = values.size();
+            ids.put(s, id);
+            values.add(s);
+        }
+
+        return id;
+    }
+
+    String get(int id) {
+
+        return values.get(id);
+    }
+
+    int size() {
+
+        return values.size();
+    }
+
+    void clear() {
+
+        ids.clear();
+        values.clear();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class AnomalyDetectorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final double DELTA = 1.0E-9;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private long timestamp = 1509358500000L;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // parse -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_Defaults() throws Exception {
+
+        AnomalyDetector d = AnomalyDetector.parse(null, new RecordingAlertSink());
+
+        assertEquals(
+                "AnomalyDetector[alpha=0.1, z=3.0, min-increase=10.0, min-stddev=1.0, warm-up=10, " +
+                        "states=[CLOSE_WAIT, TIME_WAIT]]", d.toString());
+    }
+
+    @Test
+    public void parse() throws Exception {
+
+        AnomalyDetector d = AnomalyDetector.parse(
+                "alpha=0.5, z=2, min-increase=0, min-stddev=0.5, warm-up=3, states=close_wait|SYN_SENT",
+                new RecordingAlertSink());
+
+        assertEquals(
+                "AnomalyDetector[alpha=0.5, z=2.0, min-increase=0.0, min-stddev=0.5, warm-up=3, " +
+                        "states=[CLOSE_WAIT, SYN_SENT]]", d.toString());
+    }
+
+    @Test
+    public void parse_UnknownClause() throws Exception {
+
+        assertParseFailure("color=blue", "unknown detector clause: color");
+    }
+
+    @Test
+    public void parse_MissingValue() throws Exception {
+
+        assertParseFailure("alpha", "invalid detector clause, expecting <name>=<value>: alpha");
+    }
+
+    @Test
+    public void parse_NotANumber() throws Exception {
+
+        assertParseFailure("alpha=abc", "invalid detector clause value: alpha=abc");
+        assertParseFailure("warm-up=1.5", "invalid detector clause value: warm-up=1.5");
+    }
+
+    @Test
+    public void parse_InvalidState() throws Exception {
+
+        assertParseFailure("states=CLOSE_WAIT|SLEEPING", "invalid detector clause value: states=CLOSE_WAIT|SLEEPING");
+    }
+
+    @Test
+    public void parse_DuplicateState() throws Exception {
+
+        assertParseFailure("states=CLOSE_WAIT|close_wait", "duplicate detector state: CLOSE_WAIT");
+    }
+
+    @Test
+    public void parse_DuplicateClause() throws Exception {
+
+        assertParseFailure("z=2,z=3", "duplicate detector clause: z");
+    }
+
+    @Test
+    public void constructor_DuplicateState() throws Exception {
+
+        try {
+
+            new AnomalyDetector(0.1, 3, 10, 1, 10,
+                    new ConnectionState[] { ConnectionState.TIME_WAIT, ConnectionState.TIME_WAIT },
+                    new RecordingAlertSink());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertEquals("duplicate watched state: TIME_WAIT", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parse_InvalidAlpha() throws Exception {
+
+        assertParseFailure("alpha=0", "invalid detector configuration: alpha must be in (0, 1]: 0.0");
+        assertParseFailure("alpha=1.5", "invalid detector configuration: alpha must be in (0, 1]: 1.5");
+        assertParseFailure("alpha=NaN", "invalid detector configuration: alpha must be in (0, 1]: NaN");
+    }
+
+    @Test
+    public void parse_InvalidZScoreThreshold() throws Exception {
+
+        assertParseFailure("z=NaN",
+                "invalid detector configuration: the z-score threshold must be a non-negative number: NaN");
+        assertParseFailure("z=-1",
+                "invalid detector configuration: the z-score threshold must be a non-negative number: -1.0");
+        assertParseFailure("z=Infinity",
+                "invalid detector configuration: the z-score threshold must be a non-negative number: Infinity");
+    }
+
+    @Test
+    public void parse_InvalidMinimumIncrease() throws Exception {
+
+        assertParseFailure("min-increase=-5",
+                "invalid detector configuration: the minimum increase must be a non-negative number: -5.0");
+        assertParseFailure("min-increase=NaN",
+                "invalid detector configuration: the minimum increase must be a non-negative number: NaN");
+    }
+
+    @Test
+    public void parse_InvalidMinimumStandardDeviation() throws Exception {
+
+        assertParseFailure("min-stddev=0",
+                "invalid detector configuration: the minimum standard deviation must be a positive number: 0.0");
+    }
+
+    @Test
+    public void parse_InvalidWarmUp() throws Exception {
+
+        assertParseFailure("warm-up=0", "invalid detector configuration: the warm-up must be at least one snapshot");
+    }
+
+    // detection -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void noAlertDuringWarmUp() throws Exception {
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("alpha=0.5,warm-up=3,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+
+        //
+        // the series has seen only two values
+        //
+
+        handle(d, 50, null);
+
+        assertTrue(sink.alerts.isEmpty());
+    }
+
+    @Test
+    public void alertAfterWarmUp() throws Exception {
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("alpha=0.5,warm-up=3,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 50, null);
+
+        assertEquals(2, sink.alerts.size());
+
+        Alert a = sink.get(AnomalyDetector.TOTAL);
+        assertEquals(50, a.getValue());
+
+        a = sink.get("CLOSE_WAIT");
+        assertEquals(timestamp, a.getTimestamp());
+        assertEquals(50, a.getValue());
+        assertEquals(0.0, a.getBaseline(), DELTA);
+    }
+
+    @Test
+    public void minimumIncreaseGate() throws Exception {
+
+        //
+        // on a flat baseline, an increase of 5 is 5 floored standard deviations, but less than the minimum increase
+        //
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("warm-up=3,min-increase=10,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 5, null);
+
+        assertTrue(sink.alerts.isEmpty());
+
+        sink = new RecordingAlertSink();
+        d = AnomalyDetector.parse("warm-up=3,min-increase=0,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 5, null);
+
+        assertEquals(5, sink.get("CLOSE_WAIT").getValue());
+    }
+
+    @Test
+    public void minimumStandardDeviationFloor() throws Exception {
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("warm-up=3,min-stddev=1,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 11, null);
+
+        //
+        // the baseline variance is zero, the standard deviation is floored
+        //
+
+        Alert a = sink.get("CLOSE_WAIT");
+        assertEquals(1.0, a.getStandardDeviation(), DELTA);
+        assertEquals(11.0, a.getZScore(), DELTA);
+
+        //
+        // 11 / 5 is under the threshold
+        //
+
+        sink = new RecordingAlertSink();
+        d = AnomalyDetector.parse("warm-up=3,min-stddev=5,states=CLOSE_WAIT", sink);
+
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 0, null);
+        handle(d, 11, null);
+
+        assertTrue(sink.alerts.isEmpty());
+    }
+
+    @Test
+    public void missingProcessCountsAsZero() throws Exception {
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("alpha=0.5,warm-up=3,states=CLOSE_WAIT", sink);
+
+        handle(d, 20, "java.exe");
+        handle(d, 20, "java.exe");
+        handle(d, 20, "java.exe");
+
+        //
+        // the process is absent, its baseline decays towards zero: 20 * 0.5^5 = 0.625
+        //
+
+        for(int i = 0; i < 5; i ++) {
+
+            handle(d, 0, null);
+        }
+
+        assertTrue(sink.alerts.isEmpty());
+
+        handle(d, 20, "java.exe");
+
+        Alert a = sink.get("java.exe/" + AnomalyDetector.TOTAL);
+        assertEquals(20, a.getValue());
+        assertEquals(0.625, a.getBaseline(), DELTA);
+
+        a = sink.get("java.exe/CLOSE_WAIT");
+        assertEquals(20, a.getValue());
+        assertEquals(0.625, a.getBaseline(), DELTA);
+    }
+
+    @Test
+    public void absentProcessIsEvictedOnceItsBaselineDecays() throws Exception {
+
+        RecordingAlertSink sink = new RecordingAlertSink();
+        AnomalyDetector d = AnomalyDetector.parse("alpha=0.5,warm-up=3,states=CLOSE_WAIT", sink);
+
+        handle(d, 20, "java.exe");
+        handle(d, 20, "java.exe");
+        handle(d, 20, "java.exe");
+
+        assertEquals(1, d.getProcessCount());
+
+        //
+        // 20 * 0.5^5 = 0.625 is still tracked, 20 * 0.5^6 = 0.3125 is not
+        //
+
+        for(int i = 0; i < 5; i ++) {
+
+            handle(d, 0, null);
+        }
+
+        assertEquals(1, d.getProcessCount());
+
+        handle(d, 0, null);
+
+        assertEquals(0, d.getProcessCount());
+
+        //
+        // the process shows up again, its series start over, with a new warm-up
+        //
+
+        handle(d, 20, "java.exe");
+
+        assertEquals(1, d.getProcessCount());
+
+        for(Alert a: sink.alerts) {
+
+            assertTrue(a.getSeries(), !a.getSeries().startsWith("java.exe/"));
+        }
+    }
+
+    @Test
+    public void alertTimestampIsFormattedLikeTheStatistics() throws Exception {
+
+        Alert a = new Alert(timestamp, "CLOSE_WAIT", 50, 1.5, 2.25, 21.556);
+
+        assertEquals(new SimpleDateFormat("MM/dd/yy HH:mm").format(timestamp) + ", CLOSE_WAIT, 50, 1.50, 2.25, 21.56",
+                a.toString());
+    }
+
+    @Test
+    public void alertNumbersDoNotDependOnTheDefaultLocale() throws Exception {
+
+        Locale defaultLocale = Locale.getDefault();
+
+        try {
+
+            Locale.setDefault(Locale.GERMANY);
+
+            Alert a = new Alert(timestamp, "CLOSE_WAIT", 50, 12.5, 3.0, 4.166);
+
+            assertTrue(a.toString(), a.toString().endsWith(", CLOSE_WAIT, 50, 12.50, 3.00, 4.17"));
+        }
+        finally {
+
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Sends a snapshot with the given number of CLOSE_WAIT connections to the detector.
+     *
+     * @param process the process owning the connections, may be null.
+     */
+    private void handle(AnomalyDetector d, int closeWait, String process) throws Exception {
+
+        List<Connection> connections = new ArrayList<>();
+
+        for(int i = 0; i < closeWait; i ++) {
+
+            Connection c = new Connection(i + 1, "TCP    10.0.0.1:" + (61000 + i) + "    10.0.0.2:1433    CLOSE_WAIT");
+
+            if (process != null) {
+
+                c.add(i + 1, "[" + process + "]");
+            }
+
+            connections.add(c);
+        }
+
+        timestamp += 60000L;
+
+        d.handle(timestamp, connections);
+    }
+
+    private static void assertParseFailure(String expression, String message) {
+
+        try {
+
+            AnomalyDetector.parse(expression, new RecordingAlertSink());
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class RecordingAlertSink implements AlertSink {
+
+        private final List<Alert> alerts = new ArrayList<>();
+
+        @Override
+        public void alert(Alert alert) {
+
+            alerts.add(alert);
+        }
+
+        /**
+         * @return the only alert raised for the series.
+         */
+        Alert get(String series) {
+
+            Alert found = null;
+
+            for(Alert a: alerts) {
+
+                if (a.getSeries().equals(series)) {
+
+                    assertTrue("more than one alert for " + series, found == null);
+                    found = a;
+                }
+            }
+
+            assertTrue("no alert for " + series, found != null);
+
+            return found;
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class ConnectionFilterTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LINE = "TCP    10.0.0.1:61122         Remote-Host:1433       CLOSE_WAIT";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // parse -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_Empty() throws Exception {
+
+        assertParseFailure(" ", "empty filter expression");
+    }
+
+    @Test
+    public void parse_UnknownClause() throws Exception {
+
+        assertParseFailure("color=blue", "unknown filter clause: color");
+    }
+
+    @Test
+    public void parse_DuplicateClause() throws Exception {
+
+        assertParseFailure("state=LISTENING,state=CLOSE_WAIT", "duplicate filter clause: state");
+    }
+
+    @Test
+    public void parse_MissingValue() throws Exception {
+
+        assertParseFailure("state", "invalid filter clause, expecting <name>=<value>: state");
+    }
+
+    @Test
+    public void parse_EmptyAlternative() throws Exception {
+
+        assertParseFailure("state=LISTENING|", "invalid filter clause, empty value: state=LISTENING|");
+    }
+
+    @Test
+    public void parse_InvalidState() throws Exception {
+
+        assertParseFailure("state=SLEEPING", "invalid state: SLEEPING");
+    }
+
+    @Test
+    public void parse_PortOutOfRange() throws Exception {
+
+        assertParseFailure("port=70000", "invalid port or port range: 70000");
+    }
+
+    @Test
+    public void parse_InvalidPortRange() throws Exception {
+
+        assertParseFailure("port=a-b", "invalid port, port range or service name: a-b");
+    }
+
+    @Test
+    public void parse_InvertedPortRange() throws Exception {
+
+        assertParseFailure("port=2000-1000", "invalid port or port range: 2000-1000");
+    }
+
+    @Test
+    public void parse_ToString() throws Exception {
+
+        ConnectionFilter f = ConnectionFilter.parse(
+                "state=time_wait|CLOSE_WAIT, process=java.exe, port=1400-1500|ms-sql-s, remote-address=10.0.0.2");
+
+        assertEquals(
+                "state=CLOSE_WAIT|TIME_WAIT,process=java.exe,port=1400-1500|1433,remote-address=10.0.0.2",
+                f.toString());
+    }
+
+    // acceptsLine -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void acceptsLine_State() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("state=CLOSE_WAIT|TIME_WAIT").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("state=ESTABLISHED").acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_PortRangeIsInclusive() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("port=1433-1500").acceptsLine(LINE));
+        assertTrue(ConnectionFilter.parse("port=1000-1433").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("port=1434-1500").acceptsLine(LINE));
+        assertTrue(ConnectionFilter.parse("local-port=61122-61122").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("local-port=61123-65535").acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_LocalAndRemotePort() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("remote-port=1433").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("local-port=1433").acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_ServiceNamePort() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("port=ms-sql-s").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("port=http").acceptsLine(LINE));
+
+        //
+        // service name in the line
+        //
+
+        String named = "TCP    10.0.0.1:61122         10.0.0.2:ms-sql-s      ESTABLISHED";
+
+        assertTrue(ConnectionFilter.parse("port=1433").acceptsLine(named));
+        assertTrue(ConnectionFilter.parse("remote-port=ms-sql-s").acceptsLine(named));
+    }
+
+    @Test
+    public void acceptsLine_AddressIsCaseInsensitive() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("address=remote-host").acceptsLine(LINE));
+        assertTrue(ConnectionFilter.parse("remote-address=REMOTE-HOST").acceptsLine(LINE));
+        assertTrue(ConnectionFilter.parse("local-address=10.0.0.1").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("local-address=remote-host").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("address=10.0.0.3").acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_AllClausesMustMatch() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("state=CLOSE_WAIT,port=1433").acceptsLine(LINE));
+        assertFalse(ConnectionFilter.parse("state=CLOSE_WAIT,port=8787").acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_ProcessClauseIsNotEvaluated() throws Exception {
+
+        ConnectionFilter f = ConnectionFilter.parse("process=java.exe");
+
+        assertTrue(f.requiresProcess());
+        assertTrue(f.acceptsLine(LINE));
+    }
+
+    @Test
+    public void acceptsLine_LineThatCannotBeScannedIsAccepted() throws Exception {
+
+        assertTrue(ConnectionFilter.parse("state=ESTABLISHED").acceptsLine("TCP    10.0.0.1:61122"));
+    }
+
+    // acceptsProcess --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void acceptsProcess_CaseInsensitive() throws Exception {
+
+        ConnectionFilter f = ConnectionFilter.parse("process=java.exe|svchost.exe");
+
+        assertTrue(f.acceptsProcess("JAVA.EXE"));
+        assertTrue(f.acceptsProcess("svchost.exe"));
+        assertFalse(f.acceptsProcess("chrome.exe"));
+        assertFalse(f.acceptsProcess(null));
+    }
+
+    @Test
+    public void acceptsProcess_Region() throws Exception {
+
+        ConnectionFilter f = ConnectionFilter.parse("process=Java.exe");
+
+        String line = "[java.exe]";
+
+        assertTrue(f.acceptsProcess(line, 1, line.length() - 1));
+        assertFalse(f.acceptsProcess(line, 0, line.length()));
+    }
+
+    @Test
+    public void acceptsProcess_NoProcessClause() throws Exception {
+
+        ConnectionFilter f = ConnectionFilter.parse("state=LISTENING");
+
+        assertFalse(f.requiresProcess());
+        assertTrue(f.acceptsProcess(null));
+        assertTrue(f.acceptsProcess("java.exe"));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static void assertParseFailure(String expression, String message) {
+
+        try {
+
+            ConnectionFilter.parse(expression);
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class ConnectionTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Every TCP line of the fixture must decode to the same field values as the original, eager, substring-based
+     * parsing logic.
+     */
+    @Test
+    public void fieldsMatchEagerDecoding_Fixture() throws Exception {
+
+        int lineNumber = 0;
+        int tcpLines = 0;
+
+        for(String line: NetstatTest.fixture().split("\n")) {
+
+            lineNumber ++;
+
+            line = line.trim();
+
+            if (!line.startsWith("TCP")) {
+
+                continue;
+            }
+
+            tcpLines ++;
+
+            EagerConnection expected = new EagerConnection(lineNumber, line);
+            Connection c = new Connection(lineNumber, line);
+
+            String m = "line " + lineNumber;
+
+            assertEquals(m, expected.type, c.getType());
+            assertEquals(m, expected.state, c.getState());
+            assertEquals(m, expected.localHost, c.getLocalHost());
+            assertEquals(m, expected.localPort, c.getLocalPort());
+            assertEquals(m, expected.remoteHost, c.getRemoteHost());
+            assertEquals(m, expected.remotePort, c.getRemotePort());
+        }
+
+        assertEquals(416, tcpLines);
+    }
+
+    @Test
+    public void fieldsMatchEagerDecoding_NamedPortsAndIpV6() throws Exception {
+
+        String[] lines = {
+
+                "TCP    10.0.0.1:epmap         host.example.com:microsoft-ds   ESTABLISHED",
+                "TCP    [::]:135               [::]:0                 LISTENING",
+                "TCP    [fe80::1%4]:49152      [fe80::2%4]:http       TIME_WAIT",
+                "TCP    10.0.0.1:65535         10.0.0.2:ms-sql-s      CLOSE_WAIT",
+        };
+
+        for(String line: lines) {
+
+            EagerConnection expected = new EagerConnection(1, line);
+            Connection c = new Connection(1, line);
+
+            assertEquals(line, expected.state, c.getState());
+            assertEquals(line, expected.localHost, c.getLocalHost());
+            assertEquals(line, expected.localPort, c.getLocalPort());
+            assertEquals(line, expected.remoteHost, c.getRemoteHost());
+            assertEquals(line, expected.remotePort, c.getRemotePort());
+        }
+    }
+
+    @Test
+    public void process() throws Exception {
+
+        Connection c = new Connection(1, "TCP    0.0.0.0:135    0.0.0.0:0    LISTENING");
+
+        assertNull(c.getProcess());
+
+        c.add(2, "  RpcSs");
+        assertNull(c.getProcess());
+
+        c.add(3, " [svchost.exe] ");
+        assertEquals("svchost.exe", c.getProcess());
+    }
+
+    @Test
+    public void process_Invalid() throws Exception {
+
+        Connection c = new Connection(1, "TCP    0.0.0.0:135    0.0.0.0:0    LISTENING");
+
+        try {
+
+            c.add(2, "[svchost.exe");
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals("line: 2: invalid process", e.getMessage());
+        }
+    }
+
+    @Test
+    public void unknownType() throws Exception {
+
+        assertConstructorFailure("ICMP   0.0.0.0:135    0.0.0.0:0    LISTENING",
+                "line 7: unknown connection type: ICMP   0.0.0.0:135    0.0.0.0:0    LISTENING");
+    }
+
+    @Test
+    public void invalidState() throws Exception {
+
+        assertConstructorFailure("TCP    0.0.0.0:135    0.0.0.0:0    SLEEPING", "line 7: invalid state: SLEEPING");
+    }
+
+    @Test
+    public void missingState() throws Exception {
+
+        assertConstructorFailure("TCP    0.0.0.0:135    0.0.0.0:0", "line 7: missing state");
+    }
+
+    @Test
+    public void missingPortSeparator() throws Exception {
+
+        assertConstructorFailure("TCP    0.0.0.0    0.0.0.0:0    LISTENING",
+                "line 7: missing ':' separator in the local address");
+        assertConstructorFailure("TCP    0.0.0.0:135    0.0.0.0    LISTENING",
+                "line 7: missing ':' separator in the remote address");
+    }
+
+    @Test
+    public void unknownPortName() throws Exception {
+
+        assertConstructorFailure("TCP    10.0.0.1:no-such-service    10.0.0.2:80    ESTABLISHED",
+                "line 7: unknown standard local port no-such-service");
+        assertConstructorFailure("TCP    10.0.0.1:80    10.0.0.2:no-such-service    ESTABLISHED",
+                "line 7: unknown standard remote port no-such-service");
+    }
+
+    @Test
+    public void emptyPort() throws Exception {
+
+        assertConstructorFailure("TCP    10.0.0.1:    10.0.0.2:80    ESTABLISHED",
+                "line 7: unknown standard local port ");
+    }
+
+    @Test
+    public void portOutOfRange() throws Exception {
+
+        assertConstructorFailure("TCP    10.0.0.1:80    10.0.0.2:65536    ESTABLISHED",
+                "line 7: unknown standard remote port 65536");
+    }
+
+    @Test
+    public void invalidPortAbortsParsing() throws Exception {
+
+        String content =
+                "30/10/2017\n10:15\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n" +
+                "  TCP    0.0.0.0:8o80           0.0.0.0:0              LISTENING\n";
+
+        try {
+
+            NetstatTest.parse(content, null);
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals("line 4: unknown standard local port 8o80", e.getMessage());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static void assertConstructorFailure(String line, String message) {
+
+        try {
+
+            new Connection(7, line);
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The original, eager, substring-based parsing logic, kept as reference.
+     */
+    private static class EagerConnection {
+
+        ConnectionType type;
+        ConnectionState state;
+        String localHost;
+        int localPort;
+        String remoteHost;
+        int remotePort;
+
+        EagerConnection(long lineNumber, String line) throws Exception {
+
+            if (line.startsWith(ConnectionType.TCP.name())) {
+
+                type = ConnectionType.TCP;
+            }
+            else if (line.startsWith(ConnectionType.UDP.name())) {
+
+                type = ConnectionType.UDP;
+            }
+            else {
+
+                throw new Exception("line " + lineNumber + ": unknown connection type: " + line);
+            }
+
+            line = line.substring(type.name().length()).trim();
+
+            int i = line.lastIndexOf(' ');
+
+            state = ConnectionState.valueOf(line.substring(i + 1));
+
+            line = line.substring(0, i);
+
+            i = line.indexOf(' ');
+
+            String local = line.substring(0, i).trim();
+            String remote = line.substring(i).trim();
+
+            i = local.lastIndexOf(':');
+            localHost = local.substring(0, i);
+            localPort = port(local.substring(i + 1));
+
+            i = remote.lastIndexOf(':');
+            remoteHost = remote.substring(0, i);
+            remotePort = port(remote.substring(i + 1));
+        }
+
+        private static int port(String s) {
+
+            try {
+
+                return Integer.parseInt(s);
+            }
+            catch(NumberFormatException e) {
+
+                return ServicePorts.getPort(s);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class EwmaSeriesTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final double DELTA = 1.0E-9;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void firstValueInitializesTheMean() throws Exception {
+
+        EwmaSeries s = new EwmaSeries("test", 0.1);
+
+        assertEquals("test", s.getName());
+        assertEquals(0, s.getCount());
+
+        s.update(42);
+
+        assertEquals(1, s.getCount());
+        assertEquals(42.0, s.getMean(), DELTA);
+        assertEquals(0.0, s.getVariance(), DELTA);
+    }
+
+    @Test
+    public void meanAndVariance() throws Exception {
+
+        EwmaSeries s = new EwmaSeries("test", 0.5);
+
+        s.update(10);
+
+        //
+        // diff = 10, increment = 5, mean = 15, variance = 0.5 * (0 + 10 * 5) = 25
+        //
+
+        s.update(20);
+
+        assertEquals(15.0, s.getMean(), DELTA);
+        assertEquals(25.0, s.getVariance(), DELTA);
+
+        //
+        // diff = -1, increment = -0.5, mean = 14.5, variance = 0.5 * (25 + (-1) * (-0.5)) = 12.75
+        //
+
+        s.update(14);
+
+        assertEquals(14.5, s.getMean(), DELTA);
+        assertEquals(12.75, s.getVariance(), DELTA);
+
+        //
+        // diff = 5.5, increment = 2.75, mean = 17.25, variance = 0.5 * (12.75 + 5.5 * 2.75) = 13.9375
+        //
+
+        s.update(20);
+
+        assertEquals(17.25, s.getMean(), DELTA);
+        assertEquals(13.9375, s.getVariance(), DELTA);
+        assertEquals(4, s.getCount());
+    }
+
+    @Test
+    public void smallAlpha() throws Exception {
+
+        EwmaSeries s = new EwmaSeries("test", 0.1);
+
+        s.update(0);
+
+        //
+        // diff = 10, increment = 1, mean = 1, variance = 0.9 * (0 + 10 * 1) = 9
+        //
+
+        s.update(10);
+
+        assertEquals(1.0, s.getMean(), DELTA);
+        assertEquals(9.0, s.getVariance(), DELTA);
+
+        //
+        // diff = -1, increment = -0.1, mean = 0.9, variance = 0.9 * (9 + (-1) * (-0.1)) = 8.19
+        //
+
+        s.update(0);
+
+        assertEquals(0.9, s.getMean(), DELTA);
+        assertEquals(8.19, s.getVariance(), DELTA);
+    }
+
+    @Test
+    public void constantSeriesHasNoVariance() throws Exception {
+
+        EwmaSeries s = new EwmaSeries("test", 0.3);
+
+        for(int i = 0; i < 100; i ++) {
+
+            s.update(7);
+        }
+
+        assertEquals(7.0, s.getMean(), DELTA);
+        assertEquals(0.0, s.getVariance(), DELTA);
+    }
+
+    @Test
+    public void alphaOneTracksTheLastValue() throws Exception {
+
+        EwmaSeries s = new EwmaSeries("test", 1.0);
+
+        s.update(3);
+        s.update(30);
+        s.update(12);
+
+        assertEquals(12.0, s.getMean(), DELTA);
+        assertEquals(0.0, s.getVariance(), DELTA);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
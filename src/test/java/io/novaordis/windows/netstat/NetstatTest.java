@@ -16,6 +16,26 @@
 
 package io.novaordis.windows.netstat;
 
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 9/9/17
@@ -24,8 +44,59 @@ public class NetstatTest {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
+    public static final String FIXTURE = "/data/netstat/netstat.out";
+
     // Static ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * @return the content of the netstat output fixture, which does not contain date/time headers.
+     */
+    public static String fixture() throws Exception {
+
+        InputStream is = NetstatTest.class.getResourceAsStream(FIXTURE);
+
+        assertTrue(is != null);
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+
+        StringBuilder sb = new StringBuilder();
+
+        String line;
+
+        while((line = br.readLine()) != null) {
+
+            sb.append(line).append('\n');
+        }
+
+        br.close();
+
+        return sb.toString();
+    }
+
+    public static List<Reading> parse(String content, ConnectionFilter filter) throws Exception {
+
+        RecordingHandler h = new RecordingHandler();
+
+        new Netstat(filter, Collections.singletonList(h)).parse(new BufferedReader(new StringReader(content)));
+
+        return h.readings;
+    }
+
+    public static int count(List<Connection> connections, ConnectionState state, String process) {
+
+        int count = 0;
+
+        for(Connection c: connections) {
+
+            if (c.getState().equals(state) && (process == null || process.equals(c.getProcess()))) {
+
+                count ++;
+            }
+        }
+
+        return count;
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
     // Constructors ----------------------------------------------------------------------------------------------------
@@ -34,6 +105,223 @@ public class NetstatTest {
 
     // Tests -----------------------------------------------------------------------------------------------------------
 
+    @Test
+    public void readings() throws Exception {
+
+        String fixture = fixture();
+
+        String content = "30/10/2017\n10:15\n" + fixture + "30/10/2017\n10:16\n" + fixture;
+
+        List<Reading> readings = parse(content, null);
+
+        assertEquals(2, readings.size());
+
+        SimpleDateFormat f = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+
+        assertEquals(f.parse("30/10/2017 10:15").getTime(), readings.get(0).timestamp);
+        assertEquals(f.parse("30/10/2017 10:16").getTime(), readings.get(1).timestamp);
+
+        for(Reading r: readings) {
+
+            assertEquals(416, r.connections.size());
+            assertEquals(367, count(r.connections, ConnectionState.ESTABLISHED, null));
+            assertEquals(36, count(r.connections, ConnectionState.LISTENING, null));
+            assertEquals(12, count(r.connections, ConnectionState.TIME_WAIT, null));
+            assertEquals(1, count(r.connections, ConnectionState.SYN_SENT, null));
+            assertEquals(325, count(r.connections, ConnectionState.ESTABLISHED, "java.exe"));
+            assertEquals(4, count(r.connections, ConnectionState.LISTENING, "java.exe"));
+        }
+    }
+
+    @Test
+    public void readingBoundary_LastConnectionBelongsToItsReading() throws Exception {
+
+        String content =
+                "30/10/2017\n10:15\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n" +
+                "  TCP    0.0.0.0:8787           0.0.0.0:0              LISTENING\n" +
+                " [java.exe]\n" +
+                "30/10/2017\n10:16\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n";
+
+        List<Reading> readings = parse(content, null);
+
+        assertEquals(2, readings.size());
+
+        List<Connection> first = readings.get(0).connections;
+        assertEquals(2, first.size());
+        assertEquals(8787, first.get(1).getLocalPort());
+        assertEquals("java.exe", first.get(1).getProcess());
+
+        //
+        // the last connection of the input is not lost
+        //
+
+        List<Connection> second = readings.get(1).connections;
+        assertEquals(1, second.size());
+        assertEquals(80, second.get(0).getLocalPort());
+    }
+
+    @Test
+    public void udpLineDoesNotLendItsProcessToThePrecedingTcpConnection() throws Exception {
+
+        String content =
+                "30/10/2017\n10:15\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n" +
+                " Can not obtain ownership information\n" +
+                "  UDP    0.0.0.0:123            *:*\n" +
+                " [svchost.exe]\n";
+
+        List<Reading> readings = parse(content, null);
+
+        assertEquals(1, readings.size());
+        assertEquals(1, readings.get(0).connections.size());
+        assertNull(readings.get(0).connections.get(0).getProcess());
+    }
+
+    @Test
+    public void processFilter_ServiceLinePrecedesProcessLine() throws Exception {
+
+        String content =
+                "30/10/2017\n10:15\n" +
+                "  TCP    0.0.0.0:135            0.0.0.0:0              LISTENING\n" +
+                "  RpcSs\n" +
+                " [svchost.exe]\n" +
+                "  TCP    0.0.0.0:8787           0.0.0.0:0              LISTENING\n" +
+                " [java.exe]\n";
+
+        List<Reading> readings = parse(content, ConnectionFilter.parse("process=svchost.exe"));
+
+        List<Connection> connections = readings.get(0).connections;
+        assertEquals(1, connections.size());
+        assertEquals(135, connections.get(0).getLocalPort());
+        assertEquals("svchost.exe", connections.get(0).getProcess());
+    }
+
+    @Test
+    public void processFilter_ConnectionWithoutProcessLineIsDropped() throws Exception {
+
+        String content =
+                "30/10/2017\n10:15\n" +
+                "  TCP    10.0.0.1:61000         10.0.0.2:1433          TIME_WAIT\n" +
+                "  TCP    10.0.0.1:61001         10.0.0.2:1433          ESTABLISHED\n" +
+                " [java.exe]\n" +
+                "  TCP    10.0.0.1:61002         10.0.0.2:1433          TIME_WAIT\n";
+
+        List<Reading> readings = parse(content, ConnectionFilter.parse("process=java.exe"));
+
+        List<Connection> connections = readings.get(0).connections;
+        assertEquals(1, connections.size());
+        assertEquals(61001, connections.get(0).getLocalPort());
+    }
+
+    @Test
+    public void filter_Fixture() throws Exception {
+
+        String content = "30/10/2017\n10:15\n" + fixture();
+
+        List<Reading> readings = parse(content, ConnectionFilter.parse("state=LISTENING,process=java.exe"));
+
+        List<Connection> connections = readings.get(0).connections;
+        assertEquals(4, connections.size());
+
+        for(Connection c: connections) {
+
+            assertEquals(ConnectionState.LISTENING, c.getState());
+            assertEquals("java.exe", c.getProcess());
+        }
+    }
+
+    // follow ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void follow_GrowingFile() throws Exception {
+
+        File file = File.createTempFile("netstat-", ".out");
+        file.deleteOnExit();
+
+        RecordingHandler h = new RecordingHandler();
+        Netstat netstat = new Netstat(null, Collections.singletonList(h));
+
+        FileReader reader = new FileReader(file);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread follower = new Thread(() -> {
+
+            try {
+
+                netstat.follow(reader, 20L);
+            }
+            catch(Throwable t) {
+
+                failure.set(t);
+            }
+        });
+
+        follower.start();
+
+        append(file,
+                "30/10/2017\n10:15\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n");
+
+        //
+        // the output pauses mid-reading, for many poll intervals, and resumes in the middle of a line
+        //
+
+        Thread.sleep(200L);
+
+        append(file,
+                " [java.exe]\n" +
+                "  TCP    10.0.0.1:61000         10.0.0.2:1433   ");
+
+        Thread.sleep(200L);
+
+        append(file,
+                "       CLOSE_WAIT\n" +
+                " [java.exe]\n" +
+                "  TCP    0.0.0.0:8787           0.0.0.0:0              LISTENING\n" +
+                " [java.exe]\n");
+
+        Thread.sleep(200L);
+
+        assertTrue("a pause must not end the reading", h.readings.isEmpty());
+
+        //
+        // the first reading is delivered when the header of the second one is read
+        //
+
+        append(file,
+                "30/10/2017\n10:16\n" +
+                "  TCP    0.0.0.0:80             0.0.0.0:0              LISTENING\n");
+
+        waitForReadings(h, 1);
+
+        List<Connection> first = h.readings.get(0).connections;
+        assertEquals(3, first.size());
+        assertEquals(ConnectionState.CLOSE_WAIT, first.get(1).getState());
+        assertEquals("java.exe", first.get(1).getProcess());
+        assertEquals(8787, first.get(2).getLocalPort());
+
+        //
+        // the last reading is delivered when the thread is interrupted, including content not read yet
+        //
+
+        append(file, "  TCP    0.0.0.0:8787           0.0.0.0:0              LISTENING\n");
+
+        follower.interrupt();
+        follower.join(5000L);
+        reader.close();
+
+        assertNull(failure.get());
+        assertEquals(2, h.readings.size());
+
+        SimpleDateFormat f = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+
+        assertEquals(f.parse("30/10/2017 10:15").getTime(), h.readings.get(0).timestamp);
+        assertEquals(f.parse("30/10/2017 10:16").getTime(), h.readings.get(1).timestamp);
+        assertEquals(2, h.readings.get(1).connections.size());
+    }
+
     // constructors ----------------------------------------------------------------------------------------------------
 
     // Package protected -----------------------------------------------------------------------------------------------
@@ -42,6 +330,49 @@ public class NetstatTest {
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private static void append(File file, String content) throws Exception {
+
+        try(FileWriter w = new FileWriter(file, true)) {
+
+            w.write(content);
+        }
+    }
+
+    private static void waitForReadings(RecordingHandler h, int count) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 5000L;
+
+        while(h.readings.size() < count && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(count, h.readings.size());
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
+    public static class Reading {
+
+        public long timestamp;
+        public List<Connection> connections;
+
+        Reading(long timestamp, List<Connection> connections) {
+
+            this.timestamp = timestamp;
+            this.connections = connections;
+        }
+    }
+
+    public static class RecordingHandler implements SnapshotHandler {
+
+        public final List<Reading> readings = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void handle(long timestamp, List<Connection> connections) {
+
+            readings.add(new Reading(timestamp, new ArrayList<>(connections)));
+        }
+    }
+
 }
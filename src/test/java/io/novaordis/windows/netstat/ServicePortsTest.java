@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class ServicePortsTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void everyStandardPortIsInTheDatabase() throws Exception {
+
+        for(Map.Entry<String, Integer> e: Netstat.STANDARD_PORTS.entrySet()) {
+
+            assertEquals(e.getKey(), e.getValue().intValue(), ServicePorts.getPort(e.getKey()));
+        }
+    }
+
+    @Test
+    public void getPort() throws Exception {
+
+        assertEquals(80, ServicePorts.getPort("http"));
+        assertEquals(135, ServicePorts.getPort("epmap"));
+        assertEquals(445, ServicePorts.getPort("microsoft-ds"));
+        assertEquals(1433, ServicePorts.getPort("ms-sql-s"));
+    }
+
+    @Test
+    public void getPort_Alias() throws Exception {
+
+        assertEquals(80, ServicePorts.getPort("www"));
+        assertEquals(135, ServicePorts.getPort("loc-srv"));
+    }
+
+    @Test
+    public void getPort_Unknown() throws Exception {
+
+        assertEquals(-1, ServicePorts.getPort("no-such-service"));
+        assertEquals(-1, ServicePorts.getPort("HTTP"));
+        assertEquals(-1, ServicePorts.getPort(""));
+    }
+
+    @Test
+    public void getPort_Region() throws Exception {
+
+        String line = "TCP    10.0.0.1:epmap         host:ms-sql-s      ESTABLISHED";
+
+        int i = line.indexOf("epmap");
+        assertEquals(135, ServicePorts.getPort(line, i, i + "epmap".length()));
+
+        i = line.indexOf("ms-sql-s");
+        assertEquals(1433, ServicePorts.getPort(line, i, i + "ms-sql-s".length()));
+
+        //
+        // a region that is a prefix of a known name
+        //
+
+        assertEquals(-1, ServicePorts.getPort(line, i, i + "ms-sql".length()));
+
+        //
+        // empty region
+        //
+
+        assertEquals(-1, ServicePorts.getPort(line, i, i));
+    }
+
+    @Test
+    public void getName() throws Exception {
+
+        assertEquals("ms-sql-s", ServicePorts.getName(1433));
+        assertEquals("http", ServicePorts.getName(80));
+        assertEquals("epmap", ServicePorts.getName(135));
+        assertNull(ServicePorts.getName(61122));
+        assertNull(ServicePorts.getName(-1));
+    }
+
+    @Test
+    public void size() throws Exception {
+
+        assertTrue(ServicePorts.size() > 0);
+    }
+
+    @Test
+    public void tcpWinsOverUdp() throws Exception {
+
+        ServicePorts sp = new ServicePorts(new StringReader(
+                "# comment\n" +
+                "\n" +
+                "dual             2000/udp    dual-alias\n" +
+                "udp-only         3000/udp\n" +
+                "dual             1000/tcp    dual-alias        #TCP declared after UDP\n"));
+
+        assertEquals(1000, port(sp, "dual"));
+        assertEquals(1000, port(sp, "dual-alias"));
+        assertEquals(3000, port(sp, "udp-only"));
+
+        assertEquals("dual", sp.name(1000));
+        assertEquals("dual", sp.name(2000));
+        assertEquals("udp-only", sp.name(3000));
+    }
+
+    @Test
+    public void invalidEntry() throws Exception {
+
+        try {
+
+            new ServicePorts(new StringReader("http 80\n"));
+            fail("should have thrown exception");
+        }
+        catch(Exception e) {
+
+            assertEquals("invalid services entry, missing protocol: http 80", e.getMessage());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static int port(ServicePorts sp, String name) {
+
+        return sp.port(name, 0, name.length());
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.windows.netstat;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 10/30/17
+ */
+public class SnapshotStoreTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_SegmentSmallerThanRecord() throws Exception {
+
+        try {
+
+            new SnapshotStore(SnapshotStore.RECORD_SIZE - 1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void recordsSpanMultipleSegments() throws Exception {
+
+        //
+        // three records per segment, the remaining bytes are not used
+        //
+
+        SnapshotStore s = new SnapshotStore(3 * SnapshotStore.RECORD_SIZE + 5);
+
+        s.add(100L, connections(1000, 4, "java.exe"));
+        s.add(200L, connections(2000, 0, null));
+        s.add(300L, connections(3000, 5, "svchost.exe"));
+
+        assertEquals(3, s.getSnapshotCount());
+        assertEquals(9, s.getConnectionCount());
+        assertEquals(4, s.getConnectionCount(0));
+        assertEquals(0, s.getConnectionCount(1));
+        assertEquals(5, s.getConnectionCount(2));
+
+        assertEquals(3 * 3 * SnapshotStore.RECORD_SIZE +
+                SnapshotStore.INDEX_ENTRIES_PER_SEGMENT * SnapshotStore.INDEX_ENTRY_SIZE, s.getOffHeapSize());
+
+        SnapshotCursor c = s.cursor();
+
+        for(int i = 0; i < 4; i ++) {
+
+            assertTrue(c.next());
+            assertEquals(0, c.getSnapshotIndex());
+            assertEquals(100L, c.getTimestamp());
+            assertConnection(c, 1000 + i, "java.exe");
+        }
+
+        for(int i = 0; i < 5; i ++) {
+
+            assertTrue(c.next());
+            assertEquals(2, c.getSnapshotIndex());
+            assertEquals(300L, c.getTimestamp());
+            assertConnection(c, 3000 + i, "svchost.exe");
+        }
+
+        assertFalse(c.next());
+        assertFalse(c.next());
+    }
+
+    @Test
+    public void moreSnapshotsThanIndexEntriesPerSegment() throws Exception {
+
+        SnapshotStore s = new SnapshotStore(64 * SnapshotStore.RECORD_SIZE);
+
+        int count = 2 * SnapshotStore.INDEX_ENTRIES_PER_SEGMENT + 10;
+
+        List<Connection> connections = new ArrayList<>();
+
+        for(int i = 0; i < count; i ++) {
+
+            connections.clear();
+            connections.add(connection(i % 60000, null));
+            s.add(10L * i, connections);
+        }
+
+        assertEquals(count, s.getSnapshotCount());
+        assertEquals(count, s.getConnectionCount());
+
+        for(int i = 0; i < count; i ++) {
+
+            assertEquals(10L * i, s.getTimestamp(i));
+            assertEquals(1, s.getConnectionCount(i));
+        }
+
+        int boundary = SnapshotStore.INDEX_ENTRIES_PER_SEGMENT;
+
+        assertEquals(boundary, s.getSnapshotIndex(10L * boundary));
+        assertEquals(boundary, s.getSnapshotIndex(10L * boundary - 5));
+
+        SnapshotCursor c = s.cursor(10L * (boundary - 1), 10L * (boundary + 2));
+
+        for(int i = boundary - 1; i < boundary + 2; i ++) {
+
+            assertTrue(c.next());
+            assertEquals(i, c.getSnapshotIndex());
+            assertEquals(10L * i, c.getTimestamp());
+            assertEquals(i, c.getLocalPort());
+        }
+
+        assertFalse(c.next());
+
+        c = s.cursor();
+
+        int n = 0;
+
+        while(c.next()) {
+
+            assertEquals(n % 60000, c.getLocalPort());
+            n ++;
+        }
+
+        assertEquals(count, n);
+    }
+
+    @Test
+    public void emptySnapshotsInsideCursorRange() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        s.add(100L, connections(1000, 2, null));
+        s.add(200L, Collections.emptyList());
+        s.add(300L, Collections.emptyList());
+        s.add(400L, connections(4000, 1, null));
+        s.add(500L, Collections.emptyList());
+
+        SnapshotCursor c = s.cursor(0L, Long.MAX_VALUE);
+
+        assertTrue(c.next());
+        assertEquals(1000, c.getLocalPort());
+        assertTrue(c.next());
+        assertEquals(1001, c.getLocalPort());
+        assertTrue(c.next());
+        assertEquals(3, c.getSnapshotIndex());
+        assertEquals(400L, c.getTimestamp());
+        assertEquals(4000, c.getLocalPort());
+        assertFalse(c.next());
+
+        c = s.cursor(150L, 350L);
+        assertFalse(c.next());
+    }
+
+    @Test
+    public void nextSnapshot() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        s.add(100L, connections(1000, 2, null));
+        s.add(200L, Collections.emptyList());
+        s.add(300L, connections(3000, 3, null));
+
+        SnapshotCursor c = s.cursor();
+
+        assertTrue(c.nextSnapshot());
+        assertEquals(0, c.getSnapshotIndex());
+        assertEquals(100L, c.getTimestamp());
+        assertTrue(c.hasNextInSnapshot());
+        assertTrue(c.next());
+        assertEquals(1000, c.getLocalPort());
+
+        //
+        // skip the rest of the first snapshot
+        //
+
+        assertTrue(c.nextSnapshot());
+        assertEquals(1, c.getSnapshotIndex());
+        assertEquals(200L, c.getTimestamp());
+        assertFalse(c.hasNextInSnapshot());
+
+        assertTrue(c.nextSnapshot());
+        assertEquals(2, c.getSnapshotIndex());
+
+        int n = 0;
+
+        while(c.hasNextInSnapshot()) {
+
+            assertTrue(c.next());
+            assertEquals(3000 + n, c.getLocalPort());
+            n ++;
+        }
+
+        assertEquals(3, n);
+        assertFalse(c.nextSnapshot());
+        assertFalse(c.next());
+    }
+
+    @Test
+    public void cursorBounds() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        s.add(100L, connections(1000, 1, null));
+        s.add(200L, connections(2000, 1, null));
+        s.add(200L, connections(2100, 1, null));
+        s.add(300L, connections(3000, 1, null));
+
+        assertEquals(0, s.getSnapshotIndex(50L));
+        assertEquals(0, s.getSnapshotIndex(100L));
+        assertEquals(1, s.getSnapshotIndex(200L));
+        assertEquals(3, s.getSnapshotIndex(250L));
+        assertEquals(4, s.getSnapshotIndex(400L));
+
+        //
+        // exact timestamps, "from" is inclusive, "to" is exclusive
+        //
+
+        assertEquals(Collections.singletonList(1000), ports(s.cursor(100L, 200L)));
+        assertEquals(Arrays.asList(2000, 2100), ports(s.cursor(200L, 300L)));
+        assertEquals(Arrays.asList(2000, 2100, 3000), ports(s.cursor(200L, 301L)));
+
+        //
+        // missing timestamps
+        //
+
+        assertEquals(Arrays.asList(2000, 2100), ports(s.cursor(150L, 250L)));
+        assertEquals(Collections.emptyList(), ports(s.cursor(0L, 100L)));
+        assertEquals(Collections.emptyList(), ports(s.cursor(301L, 400L)));
+        assertEquals(Collections.emptyList(), ports(s.cursor(250L, 150L)));
+    }
+
+    @Test
+    public void timestampsMustNotDecrease() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        s.add(200L, connections(1000, 1, null));
+        s.add(200L, connections(1000, 1, null));
+
+        try {
+
+            s.add(199L, connections(1000, 1, null));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            assertEquals("snapshot timestamp 199 precedes the last stored timestamp 200", e.getMessage());
+        }
+
+        assertEquals(2, s.getSnapshotCount());
+        assertEquals(2, s.getConnectionCount());
+    }
+
+    @Test
+    public void snapshotIndexOutOfBounds() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        try {
+
+            s.getTimestamp(0);
+            fail("should have thrown exception");
+        }
+        catch(IndexOutOfBoundsException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void fields() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        Connection c = new Connection(1L, "TCP    [::1]:8787    remote-host:ms-sql-s    CLOSE_WAIT");
+        c.add(2L, " [java.exe]");
+
+        s.add(100L, Collections.singletonList(c));
+        s.add(200L, Collections.singletonList(new Connection(3L, "TCP    10.0.0.1:65535    10.0.0.2:0    SYN_SENT")));
+
+        SnapshotCursor cursor = s.cursor();
+
+        assertTrue(cursor.next());
+        assertEquals(ConnectionType.TCP, cursor.getType());
+        assertEquals(ConnectionState.CLOSE_WAIT, cursor.getState());
+        assertEquals("[::1]", cursor.getLocalHost());
+        assertEquals(8787, cursor.getLocalPort());
+        assertEquals("remote-host", cursor.getRemoteHost());
+        assertEquals(1433, cursor.getRemotePort());
+        assertEquals("java.exe", cursor.getProcess());
+
+        assertTrue(cursor.next());
+        assertEquals(ConnectionState.SYN_SENT, cursor.getState());
+        assertEquals("10.0.0.1", cursor.getLocalHost());
+        assertEquals(65535, cursor.getLocalPort());
+        assertEquals(0, cursor.getRemotePort());
+        assertNull(cursor.getProcess());
+    }
+
+    @Test
+    public void loadedByNetstat() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        String fixture = NetstatTest.fixture();
+
+        new Netstat(null, Collections.singletonList(s)).parse(new BufferedReader(new StringReader(
+                "30/10/2017\n10:15\n" + fixture + "30/10/2017\n10:16\n" + fixture)));
+
+        assertEquals(2, s.getSnapshotCount());
+        assertEquals(832, s.getConnectionCount());
+
+        SnapshotCursor c = s.cursor();
+
+        int javaEstablished = 0;
+
+        while(c.next()) {
+
+            if (ConnectionState.ESTABLISHED.equals(c.getState()) && "java.exe".equals(c.getProcess())) {
+
+                javaEstablished ++;
+            }
+        }
+
+        assertEquals(2 * 325, javaEstablished);
+    }
+
+    @Test
+    public void clear() throws Exception {
+
+        SnapshotStore s = new SnapshotStore();
+
+        s.add(100L, connections(1000, 3, "java.exe"));
+        s.clear();
+
+        assertEquals(0, s.getSnapshotCount());
+        assertEquals(0, s.getConnectionCount());
+        assertEquals(0, s.getOffHeapSize());
+        assertFalse(s.cursor().next());
+
+        s.add(50L, connections(500, 1, "svchost.exe"));
+
+        SnapshotCursor c = s.cursor();
+        assertTrue(c.next());
+        assertEquals("svchost.exe", c.getProcess());
+    }
+
+    @Test
+    public void failedAddLeavesTheStoreUnchanged() throws Exception {
+
+        SnapshotStore s = new SnapshotStore(5 * SnapshotStore.RECORD_SIZE);
+
+        s.add(100L, connections(1000, 3, "java.exe"));
+
+        //
+        // the fourth connection fails after three records of the snapshot were written, one into a new segment
+        //
+
+        List<Connection> failing = connections(2000, 3, "java.exe");
+
+        failing.add(new Connection(1L, "TCP    10.0.0.1:3000    10.0.0.2:1433    ESTABLISHED") {
+
+            @Override
+            public int getRemotePort() {
+
+                throw new IllegalStateException("SYNTHETIC");
+            }
+        });
+
+        try {
+
+            s.add(200L, failing);
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e) {
+
+            assertEquals("SYNTHETIC", e.getMessage());
+        }
+
+        assertEquals(1, s.getSnapshotCount());
+        assertEquals(3, s.getConnectionCount());
+        assertEquals(Arrays.asList(1000, 1001, 1002), ports(s.cursor()));
+
+        //
+        // the next snapshot takes the place of the discarded records
+        //
+
+        s.add(300L, connections(4000, 2, "svchost.exe"));
+
+        assertEquals(2, s.getSnapshotCount());
+        assertEquals(5, s.getConnectionCount());
+        assertEquals(Arrays.asList(1000, 1001, 1002, 4000, 4001), ports(s.cursor()));
+
+        SnapshotCursor c = s.cursor(300L, 301L);
+        assertTrue(c.next());
+        assertConnection(c, 4000, "svchost.exe");
+        assertTrue(c.next());
+        assertConnection(c, 4001, "svchost.exe");
+        assertFalse(c.next());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static Connection connection(int localPort, String process) throws Exception {
+
+        Connection c = new Connection(1L, "TCP    10.0.0.1:" + localPort + "    10.0.0.2:1433    ESTABLISHED");
+
+        if (process != null) {
+
+            c.add(2L, "[" + process + "]");
+        }
+
+        return c;
+    }
+
+    /**
+     * @return count connections with consecutive local ports, starting with firstPort.
+     */
+    private static List<Connection> connections(int firstPort, int count, String process) throws Exception {
+
+        List<Connection> result = new ArrayList<>();
+
+        for(int i = 0; i < count; i ++) {
+
+            result.add(connection(firstPort + i, process));
+        }
+
+        return result;
+    }
+
+    private static void assertConnection(SnapshotCursor c, int localPort, String process) {
+
+        assertEquals(ConnectionType.TCP, c.getType());
+        assertEquals(ConnectionState.ESTABLISHED, c.getState());
+        assertEquals("10.0.0.1", c.getLocalHost());
+        assertEquals(localPort, c.getLocalPort());
+        assertEquals("10.0.0.2", c.getRemoteHost());
+        assertEquals(1433, c.getRemotePort());
+        assertEquals(process, c.getProcess());
+    }
+
+    private static List<Integer> ports(SnapshotCursor c) {
+
+        List<Integer> result = new ArrayList<>();
+
+        while(c.next()) {
+
+            result.add(c.getLocalPort());
+        }
+
+        return result;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}